@@ -0,0 +1,30 @@
+package engine;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler attached, so each result also reports {@code gc.alloc.rate.norm} in B/op.
+ * <p>Arguments are benchmark name patterns. Without any, every benchmark that runs without a display is included,
+ * which leaves out those creating a GL context.</p>
+ */
+public final class Benchmarks {
+    private static final String[] REQUIRES_DISPLAY = {"UniformBenchmark"};
+
+    private Benchmarks() {}
+
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .addProfiler(GCProfiler.class)
+                .jvmArgsAppend("-Djava.awt.headless=true");
+        if (args.length == 0) {
+            options.include("engine\\..*Benchmark");
+            for (String benchmark: REQUIRES_DISPLAY) options.exclude(benchmark);
+        } else for (String pattern: args) options.include(pattern);
+
+        new Runner(options.build()).run();
+    }
+}
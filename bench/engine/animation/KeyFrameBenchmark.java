@@ -0,0 +1,32 @@
+package engine.animation;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** {@link KeyFrame#mix(KeyFrame, KeyFrame, double)} for every easing mode, as run by each animated entity per frame. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyFrameBenchmark {
+    @Param({"0", "1", "2", "3", "4", "5", "6", "7", "8", "9"})
+    public int mode;
+
+    private final KeyFrame from = new KeyFrame(), to = new KeyFrame(0.5), result = new KeyFrame();
+    private double t = 0;
+
+    @Setup
+    public void setup() {
+        from.setPos(0, 0, 0).setRotation(0, 0, 0).setScale(1, 1, 1);
+        to.setPos(1, 2, 3).setRotation(0, 90, 0).setScale(2, 2, 2).setMode(mode, 2);
+    }
+
+    @Benchmark
+    public KeyFrame mix() {
+        if ((t += 0.001) > to.getTime()) t = 0;
+        return result.mix(from, to, t);
+    }
+}
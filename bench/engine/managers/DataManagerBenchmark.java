@@ -0,0 +1,28 @@
+package engine.managers;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** Setting lookups, which the engine does by name from its hot paths. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataManagerBenchmark {
+    private final String present = "tps", missing = "not_a_setting";
+
+    @Benchmark
+    public float getSetting() { return DataManager.getSetting(present); }
+
+    @Benchmark
+    public float getMissingSetting() { return DataManager.getSetting(missing); }
+
+    @Benchmark
+    public boolean getFlag() { return DataManager.getFlag(present); }
+
+    @Benchmark
+    public float getSettingClamped() { return DataManager.getSettingClamped(present, 1, 1000); }
+}
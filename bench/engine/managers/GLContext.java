@@ -0,0 +1,36 @@
+package engine.managers;
+
+import org.lwjgl.glfw.GLFWErrorCallback;
+
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL.createCapabilities;
+
+/** Hidden 1x1 GLFW window whose context is made current on the calling thread, for benchmarks that issue GL calls. */
+final class GLContext {
+    private static long window = 0;
+
+    private GLContext() {}
+
+    static void create() {
+        if (window != 0) {
+            glfwMakeContextCurrent(window);
+            return;
+        }
+
+        GLFWErrorCallback.createPrint(System.err).set();
+        if (!glfwInit()) throw new IllegalStateException("Failed to initialize GLFW.");
+        glfwDefaultWindowHints();
+        glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+        if ((window = glfwCreateWindow(1, 1, "Benchmark", 0, 0)) == 0)
+            throw new RuntimeException("Failed to create the benchmark GL context.");
+        glfwMakeContextCurrent(window);
+        createCapabilities();
+    }
+
+    static void destroy() {
+        if (window == 0) return;
+        glfwDestroyWindow(window);
+        glfwTerminate();
+        window = 0;
+    }
+}
@@ -0,0 +1,27 @@
+package engine.managers;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** Parsing a {@code .glitchedObj} resource and building its vertex and index buffers, without uploading them. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBenchmark {
+    @Param({"triangle", "quad", "box", "sphere"})
+    public String model;
+
+    private Shader shader;
+
+    @Setup
+    public void setup() {
+        shader = new Shader("shader", false);
+    }
+
+    @Benchmark
+    public Model load() { return new Model(model, shader); }
+}
@@ -0,0 +1,207 @@
+package engine.managers;
+
+import engine.utils.Entity;
+import engine.utils.GameLogic;
+import engine.utils.LatencyHistogram;
+import engine.utils.Sphere;
+import game.Box;
+import game.Sprite;
+import org.lwjgl.glfw.GLFWErrorCallback;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.lwjgl.glfw.GLFW.glfwInit;
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * Scripted scenes run through {@link Headless}, swept over entity count and job workers.
+ * <p>Each run creates the scene, warms it up for {@link #WARMUP} ticks, then measures {@code ticks} ticks and prints
+ * one CSV line: ticks and entity updates per second, tick latency percentiles and bytes allocated per tick across all
+ * threads. The {@link Jobs} pool is rebuilt with the given number of workers before each run, so one JVM covers the
+ * whole sweep.</p>
+ * <p>With {@code frames} above 0, the scenes are built with GL in {@link Offscreen} mode instead of headless, and each
+ * run then draws {@code frames} frames of the ticked scene after {@link #FRAME_WARMUP} more, adding frames per second
+ * and frame latency percentiles to its line. Every frame is finished before the next starts, so its latency covers
+ * rasterizing as well as submitting. This needs a display, which may be a virtual one such as {@code xvfb-run} with
+ * Mesa llvmpipe, and the {@code depth_test} and {@code blend_test} settings apply as in the game.</p>
+ * <p>In {@code SPAWNERS}, every entity destroys the child it spawned on the previous tick and spawns a new one from
+ * its parallel update, so entity updates per second are also spawns per second.</p>
+ * <p>Arguments: {@code [ticks] [frames] [max entities] [scenario...]}, defaulting to 200 ticks, no frames, 100k
+ * entities and every scenario.</p>
+ */
+public final class Scenarios {
+    private static final int WARMUP = 50, FRAME_WARMUP = 5;
+    private static final int[] COUNTS = {100, 1_000, 10_000, 100_000};
+
+    private enum Scenario {
+        SPHERES(i -> new BouncingSphere(i)),
+        BOXES(i -> new AnimatedBox(i)),
+        SPRITES(i -> new Sprite(x(i), y(i), z(i))),
+        SPAWNERS(i -> new Spawner(i)),
+        MIXED(i -> switch (i & 3) {
+            case 0 -> new BouncingSphere(i);
+            case 1 -> new AnimatedBox(i);
+            case 2 -> new Sprite(x(i), y(i), z(i));
+            default -> new Box(x(i), y(i), z(i));
+        });
+
+        private final Function<Integer, Entity> factory;
+        Scenario(Function<Integer, Entity> factory) { this.factory = factory; }
+    }
+
+    private Scenarios() {}
+
+    public static void main(String[] args) {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        int maxEntities = args.length > 2 ? Integer.parseInt(args[2]) : COUNTS[COUNTS.length - 1];
+        List<Scenario> scenarios = new ArrayList<>();
+        for (int i=3; i<args.length; i++) scenarios.add(Scenario.valueOf(args[i].toUpperCase()));
+        if (scenarios.isEmpty()) scenarios.addAll(List.of(Scenario.values()));
+        if (frames > 0) initializeGL();
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("scenario,entities,parallelism,ticks,tps,entity_updates_per_s,p50_ms,p99_ms,p999_ms,max_ms,alloc_bytes_per_tick,"
+                + "frames,fps,frame_p50_ms,frame_p99_ms,frame_max_ms");
+        for (Scenario scenario: scenarios) for (int count: COUNTS) {
+            if (count > maxEntities) break;
+            for (int parallelism=1; ; parallelism=Math.min(cores, parallelism * 2)) {
+                Jobs.setWorkers(parallelism);
+                System.out.println(run(scenario, count, parallelism, ticks, frames));
+                if (parallelism == cores) break;
+            }
+        }
+    }
+
+    /** Sets up GL the way {@link Main} does, drawing into an {@link Offscreen} framebuffer of a hidden window. */
+    private static void initializeGL() {
+        GLFWErrorCallback.createPrint(System.err).set();
+        if (!glfwInit()) throw new IllegalStateException("Failed to initialize GLFW.");
+        Offscreen.enable();
+        Window.initialize();
+        Shader.get("shader").bind();
+        TextureAtlas.initialize();
+        if (DataManager.getFlag("depth_test")) glEnable(GL_DEPTH_TEST);
+        if (DataManager.getFlag("blend_test")) { glEnable(GL_BLEND); glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA); }
+    }
+
+    private static String run(Scenario scenario, int count, int parallelism, int ticks, int frames) {
+        GameLogic game = new GameLogic() {
+            public void initialize() { for (int i=0; i<count; i++) create(scenario.factory.apply(i)); }
+            public void update(double dt) {}
+            public void staticUpdate(double dt) {}
+        };
+        double step = 1d / DataManager.getSetting("tps");
+        if (frames > 0) {
+            game.initialize();
+            for (int tick=0; tick<WARMUP; tick++) Headless.tick(game, step);
+        } else Headless.run(game, WARMUP, 0, new LatencyHistogram());
+
+        LatencyHistogram latency = new LatencyHistogram();
+        long allocated = allocatedBytes(), begin = System.nanoTime();
+        for (int tick=0; tick<ticks; tick++) {
+            long start = System.nanoTime();
+            Headless.tick(game, step);
+            latency.record(System.nanoTime() - start);
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        allocated = allocatedBytes() - allocated;
+
+        LatencyHistogram frameLatency = new LatencyHistogram();
+        double frameSeconds = 0;
+        if (frames > 0) {
+            for (int frame=0; frame<FRAME_WARMUP; frame++) renderFrame();
+            begin = System.nanoTime();
+            for (int frame=0; frame<frames; frame++) {
+                long start = System.nanoTime();
+                renderFrame();
+                frameLatency.record(System.nanoTime() - start);
+            }
+            frameSeconds = (System.nanoTime() - begin) / 1e9;
+        }
+
+        spawning = false;
+        Scene.get().objects().forEach(Scene.get()::destroy);
+        Headless.tick(game, step);
+        spawning = true;
+        if (!Scene.get().objects().isEmpty())
+            throw new IllegalStateException("%d entities outlived the %s run.".formatted(Scene.get().objects().size(), scenario));
+
+        return String.format(Locale.ROOT, "%s,%d,%d,%d,%.1f,%.0f,%.4f,%.4f,%.4f,%.4f,%d,%d,%.1f,%.4f,%.4f,%.4f",
+                scenario.name().toLowerCase(), count, parallelism, ticks, ticks / seconds, ticks * (double) count / seconds,
+                latency.getPercentile(50) / 1e6, latency.getPercentile(99) / 1e6, latency.getPercentile(99.9) / 1e6,
+                latency.getMax() / 1e6, allocated / ticks,
+                frames, frames > 0 ? frames / frameSeconds : 0, frameLatency.getPercentile(50) / 1e6,
+                frameLatency.getPercentile(99) / 1e6, frameLatency.getMax() / 1e6
+        );
+    }
+
+    private static void renderFrame() {
+        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+        Scene.get().render();
+        Shader.endFrame();
+        Window.frameUpdate();
+        glFinish();
+    }
+
+    /** Bytes allocated by every thread of the JVM so far, or -1 where the JVM cannot tell. */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads)
+            return threads.getTotalThreadAllocatedBytes();
+        return -1;
+    }
+
+    // --- Entities ----------------------------------------------------------------------------------------------------
+
+    private static volatile boolean spawning = true;
+    private static final int SIDE = (int) Math.cbrt(COUNTS[COUNTS.length - 1]);
+    private static final float SPACING = 2, WALL = SIDE * SPACING;
+
+    private static float x(int i) { return (i % SIDE) * SPACING; }
+    private static float y(int i) { return (i / SIDE % SIDE) * SPACING; }
+    private static float z(int i) { return (i / SIDE / SIDE) * SPACING + 5; }
+
+    /** A sphere moving at a random velocity, bouncing off other spheres and off the walls of the grid. */
+    private static final class BouncingSphere extends Sphere {
+        private BouncingSphere(int i) {
+            super(x(i), y(i), z(i));
+            Random random = new Random(i);
+            speed.set(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f).mul(4);
+        }
+
+        @Override
+        public void staticUpdate(double dt) {
+            super.staticUpdate(dt);
+            if (position.x < 0) speed.x = Math.abs(speed.x); else if (position.x > WALL) speed.x = -Math.abs(speed.x);
+            if (position.y < 0) speed.y = Math.abs(speed.y); else if (position.y > WALL) speed.y = -Math.abs(speed.y);
+            if (position.z < 5) speed.z = Math.abs(speed.z); else if (position.z > WALL + 5) speed.z = -Math.abs(speed.z);
+        }
+    }
+
+    /** A box replacing the child it spawned last tick with a new one on every update, until the run tears down. */
+    private static final class Spawner extends Box {
+        private Entity child = null;
+
+        private Spawner(int i) { super(x(i), y(i), z(i)); }
+
+        @Override
+        public void update(double dt) {
+            if (!spawning) return;
+            if (child != null) Scene.get().destroy(child);
+            Scene.get().create(child = new Box(position.x, position.y, position.z));
+        }
+    }
+
+    /** A box that restarts its {@link engine.animation.StateAnimation} whenever it finishes. */
+    private static final class AnimatedBox extends Box {
+        private AnimatedBox(int i) { super(x(i), y(i), z(i)); }
+
+        @Override
+        public void update(double dt) { stateAnimation.start(); }
+    }
+}
@@ -0,0 +1,39 @@
+package engine.managers;
+
+import org.joml.Vector4i;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Laying out the textures of {@code resources/textures} and drawing them into the atlas image. Only the upload to GL
+ * is left out. Run with {@code -Djava.awt.headless=true} on machines without a display.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class TextureAtlasBenchmark {
+    private List<BufferedImage> images;
+    private List<Vector4i> points;
+
+    @Setup
+    public void setup() throws IOException {
+        images = TextureAtlas.getTextures();
+        points = TextureAtlas.texturePacking(images);
+    }
+
+    @Benchmark
+    public List<Vector4i> packing() { return TextureAtlas.texturePacking(images); }
+
+    @Benchmark
+    public List<Vector4i> generate() {
+        TextureAtlas.generateAtlas(points, images);
+        return points;
+    }
+}
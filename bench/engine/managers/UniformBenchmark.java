@@ -0,0 +1,59 @@
+package engine.managers;
+
+import com.glitched.uniforms.UniformMapper;
+import engine.utils.Entity;
+import engine.utils.UniformFunctions;
+import game.Box;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-draw uniform cost: the reflective {@link UniformMapper} lookup the engine used to do for every uniform name
+ * against {@link Shader#applyUniforms(Object)} with per-class binders.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UniformBenchmark {
+    @Param({"Entity", "Box"})
+    public String type;
+
+    private Shader shader;
+    private Object instance;
+    private String[] names;
+    private UniformFunctions[] functions;
+
+    @Setup
+    public void setup() {
+        GLContext.create();
+        switch (type) {
+            case "Entity" -> { shader = Shader.get("interact_shader"); instance = new Entity("quad", shader) {}; }
+            default -> { shader = Shader.get("interact_shader"); instance = new Box(0, 0, 0); }
+        }
+        shader.bind();
+
+        names = shader.getUniformNames().toArray(String[]::new);
+        functions = new UniformFunctions[names.length];
+        for (int i=0; i<names.length; i++) functions[i] = shader.getUniformFunction(names[i]);
+    }
+
+    @TearDown
+    public void tearDown() {
+        shader.unbind();
+    }
+
+    @Benchmark
+    public void reflective() {
+        for (int i=0; i<names.length; i++) if (functions[i] != null)
+            functions[i].setUniform(shader.getUniform(names[i]), UniformMapper.get(instance, names[i]));
+    }
+
+    @Benchmark
+    public void binder() {
+        shader.applyUniforms(instance);
+    }
+}
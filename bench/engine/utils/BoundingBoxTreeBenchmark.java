@@ -0,0 +1,117 @@
+package engine.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoundingBoxTreeBenchmark {
+    private static final float WORLD = 200, SIZE = 1, RADIUS = 2;
+
+    @Param({"1000", "10000", "100000"})
+    public int entities;
+
+    private final BoundingBoxTree<Integer> tree = new BoundingBoxTree<>();
+    private float[] bounds;
+    private int[] proxies;
+    private float[] queries;
+    private int query = 0, hits = 0;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        bounds = new float[entities * 6];
+        proxies = new int[entities];
+        for (int i=0; i<entities; i++) {
+            float x = random.nextFloat() * WORLD, y = random.nextFloat() * WORLD, z = random.nextFloat() * WORLD;
+            bounds[i*6] = x; bounds[i*6+1] = y; bounds[i*6+2] = z;
+            bounds[i*6+3] = x + SIZE; bounds[i*6+4] = y + SIZE; bounds[i*6+5] = z + SIZE;
+            proxies[i] = tree.insert(i, x, y, z, x + SIZE, y + SIZE, z + SIZE);
+        }
+
+        queries = new float[1024 * 3];
+        for (int i=0; i<queries.length; i++) queries[i] = random.nextFloat() * WORLD;
+    }
+
+    private int next() { return (query = (query + 3) % queries.length); }
+
+    @Benchmark
+    public int treeRadius() {
+        int q = next();
+        hits = 0;
+        tree.queryRadius(queries[q], queries[q+1], queries[q+2], RADIUS, item -> { hits++; return true; });
+        return hits;
+    }
+
+    @Benchmark
+    public int linearRadius() {
+        int q = next(), count = 0;
+        float x = queries[q], y = queries[q+1], z = queries[q+2];
+        for (int i=0; i<entities; i++) {
+            int o = i * 6;
+            float dx = Math.max(Math.max(bounds[o] - x, 0), x - bounds[o+3]);
+            float dy = Math.max(Math.max(bounds[o+1] - y, 0), y - bounds[o+4]);
+            float dz = Math.max(Math.max(bounds[o+2] - z, 0), z - bounds[o+5]);
+            if (dx * dx + dy * dy + dz * dz <= RADIUS * RADIUS) count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int treeAabb() {
+        int q = next();
+        hits = 0;
+        tree.queryAabb(queries[q], queries[q+1], queries[q+2], queries[q] + RADIUS, queries[q+1] + RADIUS, queries[q+2] + RADIUS, item -> { hits++; return true; });
+        return hits;
+    }
+
+    @Benchmark
+    public int linearAabb() {
+        int q = next(), count = 0;
+        float x = queries[q], y = queries[q+1], z = queries[q+2];
+        for (int i=0; i<entities; i++) {
+            int o = i * 6;
+            if (bounds[o] <= x + RADIUS && bounds[o+1] <= y + RADIUS && bounds[o+2] <= z + RADIUS
+                    && bounds[o+3] >= x && bounds[o+4] >= y && bounds[o+5] >= z) count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public void treeRaycast(Blackhole blackhole) {
+        int q = next();
+        tree.raycast(queries[q], queries[q+1], 0, 0.1f, 0.2f, 1, WORLD, (item, distance) -> { blackhole.consume(item); return distance; });
+    }
+
+    @Benchmark
+    public void linearRaycast(Blackhole blackhole) {
+        int q = next(), nearest = -1;
+        float ox = queries[q], oy = queries[q+1], best = WORLD;
+        float ix = 1 / 0.1f, iy = 1 / 0.2f;
+        for (int i=0; i<entities; i++) {
+            int o = i * 6;
+            float t1 = (bounds[o] - ox) * ix, t2 = (bounds[o+3] - ox) * ix;
+            float tMin = Math.min(t1, t2), tMax = Math.max(t1, t2);
+            t1 = (bounds[o+1] - oy) * iy; t2 = (bounds[o+4] - oy) * iy;
+            tMin = Math.max(tMin, Math.min(t1, t2)); tMax = Math.min(tMax, Math.max(t1, t2));
+            tMin = Math.max(tMin, bounds[o+2]); tMax = Math.min(tMax, bounds[o+5]);
+            if (tMax >= Math.max(tMin, 0) && tMin < best) { best = tMin; nearest = i; }
+        }
+        blackhole.consume(nearest);
+    }
+
+    @Benchmark
+    public boolean treeMove() {
+        int i = next() % entities, o = i * 6;
+        float offset = (query & 1) == 0 ? 0.5f : -0.5f;
+        for (int j=0; j<6; j++) bounds[o+j] += offset;
+        return tree.move(proxies[i], bounds[o], bounds[o+1], bounds[o+2], bounds[o+3], bounds[o+4], bounds[o+5]);
+    }
+}
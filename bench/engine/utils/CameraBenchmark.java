@@ -0,0 +1,44 @@
+package engine.utils;
+
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** {@link Camera#isInView(Vector3f, Vector3f)}, the frustum test every entity runs on each static update. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CameraBenchmark {
+    private static final int BOXES = 1024;
+
+    private final Camera camera = new Camera();
+    private final Vector3f[] min = new Vector3f[BOXES], max = new Vector3f[BOXES];
+    private int box = 0;
+
+    @Setup
+    public void setup() {
+        camera.staticUpdate();
+        Random random = new Random(42);
+        for (int i=0; i<BOXES; i++) {
+            min[i] = new Vector3f(random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100);
+            max[i] = new Vector3f(min[i]).add(1, 1, 1);
+        }
+    }
+
+    @Benchmark
+    public boolean isInView() {
+        box = (box + 1) & (BOXES - 1);
+        return camera.isInView(min[box], max[box]);
+    }
+
+    @Benchmark
+    public Camera frustum() {
+        camera.staticUpdate();
+        return camera;
+    }
+}
@@ -0,0 +1,55 @@
+package engine.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link Vector} operations the engine runs per entity and per frame. Run with {@code -prof gc}: apart from the
+ * allocating {@code toFloatArray()} baseline, {@code gc.alloc.rate.norm} should read 0 B/op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorBenchmark {
+    private final Vector a = new Vector(1, 2, 3), b = new Vector(0.5, -0.25, 2);
+    private final float[] floats = new float[3];
+
+    @Benchmark
+    public Vector addVector() { return a.add(b).sub(b); }
+
+    @Benchmark
+    public Vector addComponents() { return a.add(0.5, -0.25, 2).sub(0.5, -0.25, 2); }
+
+    @Benchmark
+    public Vector scale() { return a.mul(1.5).div(1.5); }
+
+    @Benchmark
+    public double dot() { return a.dotDouble(b); }
+
+    @Benchmark
+    public float dotFloat() { return a.dotFloat(b); }
+
+    @Benchmark
+    public double length() { return a.length(); }
+
+    @Benchmark
+    public Vector normalize() { return a.normalize(3.7416575); }
+
+    @Benchmark
+    public float[] toFloatArrayInto() { return a.toFloatArray(floats); }
+
+    @Benchmark
+    public float[] toFloatArray() { return a.toFloatArray(); }
+
+    @Benchmark
+    public void getters(Blackhole blackhole) {
+        blackhole.consume(a.xf());
+        blackhole.consume(a.yd());
+        blackhole.consume(a.zi());
+    }
+}
@@ -2,20 +2,26 @@
 #version 330
 
 layout (location = 0) in vec3 vPos; //$ Position
+layout (location = 1) in mat4 iTransform; //$ transform $ instanced
+layout (location = 5) in int iPickID; //$ pickID $ instanced
+
+flat out int fID;
 
 uniform mat4 view;
 uniform mat4 projection;
-uniform mat4 transform;
 
 void main() {
-    gl_Position = projection * view * transform * vec4(vPos, 1.);
+    gl_Position = projection * view * iTransform * vec4(vPos, 1.);
+    fID = iPickID;
 }
 
 //$Fragment Shader
 #version 330
 
-uniform vec3 fCol; //$ colorID
+flat in int fID;
+
+layout (location = 0) out uint oID;
 
 void main() {
-    gl_FragColor = vec4(fCol, 1.);
-}
\ No newline at end of file
+    oID = uint(fID);
+}
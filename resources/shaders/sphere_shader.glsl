@@ -2,27 +2,28 @@
 #version 330
 
 layout (location = 0) in vec3 vPos; //$ Position
+layout (location = 1) in mat4 iTransform; //$ transform $ instanced
+layout (location = 5) in vec3 iColor; //$ sphereColor $ instanced
 
 out vec2 fPos;
+flat out vec3 fColor;
 
 uniform mat4 view;
 uniform mat4 projection;
-uniform mat4 transform;
 
 void main() {
-    gl_Position = projection * view * transform * vec4(vPos, 1.);
+    gl_Position = projection * view * iTransform * vec4(vPos, 1.);
     fPos = vPos.xy;
+    fColor = iColor;
 }
 
 //$Fragment Shader
 #version 330
 
-in vec3 fCol;
 in vec2 fPos;
-
-uniform vec3 color; //$ sphereColor
+flat in vec3 fColor;
 
 void main() {
     if (distance(fPos, vec2(0)) > 0.5) discard;
-    gl_FragColor = vec4(color, 1.);
+    gl_FragColor = vec4(fColor, 1.);
 }
\ No newline at end of file
@@ -3,20 +3,19 @@
 
 layout (location = 0) in vec3 vPos; //$ Position
 layout (location = 1) in vec2 vTex; //$ Texture $InvertedXY
+layout (location = 2) in mat4 iTransform; //$ transform $ instanced
+layout (location = 6) in vec4 iAtlasRemap; //$ AtlasRemapping $ instanced
 
 out vec2 fTex;
 
 uniform mat4 view;
 uniform mat4 projection;
-uniform mat4 transform;
-
-uniform vec4 atlasRemap; //$ AtlasRemapping
 
 void main() {
-    gl_Position = projection * view * transform * vec4(vPos, 1.);
+    gl_Position = projection * view * iTransform * vec4(vPos, 1.);
     fTex = vec2(
-        atlasRemap.x + vTex.x * (atlasRemap.z - atlasRemap.x),
-        atlasRemap.y + vTex.y * (atlasRemap.w - atlasRemap.y)
+        iAtlasRemap.x + vTex.x * (iAtlasRemap.z - iAtlasRemap.x),
+        iAtlasRemap.y + vTex.y * (iAtlasRemap.w - iAtlasRemap.y)
     );
 }
 
@@ -45,8 +45,10 @@ public class StateAnimation {
 
     public void addMapping(String field, String method) { addMapping(field, method, false); }
     public void addMapping(String field, String method, boolean relative) {
-        try { mappings.put(field, new AnimationMapping(relative, entity.getClass().getDeclaredMethod(method, Vector.class))); }
-        catch (NoSuchMethodException ignored) {}
+        for (Class<?> type = entity.getClass(); type != null; type = type.getSuperclass()) {
+            try { mappings.put(field, new AnimationMapping(relative, type.getDeclaredMethod(method, Vector.class))); return; }
+            catch (NoSuchMethodException ignored) {}
+        }
     }
 
     public void addKeyframe(KeyFrame keyFrame) { keyFrames.add(keyFrame); }
@@ -0,0 +1,43 @@
+package engine.managers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Structural changes to a {@link Scene} recorded by one thread and applied at the scene's next sync point.
+ * <p>Each thread appends to its own buffer, so recording never locks. Every command is keyed by the job pass and the
+ * entity being updated when it was issued, then by its order within that, which lets the scene merge all buffers in
+ * the same order however the entities were spread over the workers.</p>
+ */
+final class CommandBuffer {
+    static final int CREATE = 0, DESTROY = 1, EDIT = 2;
+
+    record Command(long key, int kind, Object target) {}
+
+    private final List<Command> commands = new ArrayList<>();
+    private final Thread owner = Thread.currentThread();
+    private int pass = -1, issuer = 0, sequence = 0;
+
+    /** Keys the following commands to entity {@code issuer} updating in job pass {@code pass}. */
+    void issue(int pass, int issuer) {
+        this.pass = pass;
+        this.issuer = issuer;
+    }
+
+    /** Keys the following commands as issued outside of any job, ahead of every pass. */
+    void clearIssuer() { issue(-1, 0); }
+
+    void add(int kind, Object target) {
+        long key = (long) (pass + 1) << 56 | (issuer & 0xFFFFFFFFL) << 24 | sequence++ & 0xFFFFFF;
+        commands.add(new Command(key, kind, target));
+    }
+
+    /** Whether the thread recording into this buffer ended, like the workers of a replaced job pool. */
+    boolean isAbandoned() { return !owner.isAlive(); }
+
+    void drainTo(List<Command> dest) {
+        dest.addAll(commands);
+        commands.clear();
+        sequence = 0;
+    }
+}
@@ -0,0 +1,36 @@
+package engine.managers;
+
+import engine.utils.LatencyHistogram;
+import lombok.Getter;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Waits for the next deadline of the main loop without busy-waiting.
+ * <p>The thread is parked until {@code frame_spin_us} before the deadline and only spins for the rest, so it wakes on
+ * time while leaving the core free for the rest of the wait. How late each wake-up was is kept in {@link #getJitter()}
+ * and recorded as {@link Metrics.Phase#PACING_JITTER}.</p>
+ */
+@SuppressWarnings("unused")
+public final class FramePacer {
+    private static final long spinNanos = Math.max(0, (long) (DataManager.getSetting("frame_spin_us") * 1000));
+
+    @Getter private static final LatencyHistogram jitter = new LatencyHistogram();
+
+    private FramePacer() {}
+
+    /** Returns at the {@link System#nanoTime()} {@code deadline}, or at once when it already passed. */
+    public static void waitUntil(long deadline) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) return;
+
+        while (remaining > spinNanos) {
+            LockSupport.parkNanos(remaining - spinNanos);
+            remaining = deadline - System.nanoTime();
+        }
+        while (System.nanoTime() < deadline) Thread.onSpinWait();
+
+        jitter.record(System.nanoTime() - deadline);
+        Metrics.record(Metrics.Phase.PACING_JITTER, deadline);
+    }
+}
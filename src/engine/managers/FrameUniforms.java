@@ -0,0 +1,96 @@
+package engine.managers;
+
+import engine.utils.Camera;
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.lwjgl.glfw.GLFW.glfwGetTime;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.glBindBufferBase;
+import static org.lwjgl.opengl.GL31.*;
+
+/**
+ * std140 uniform buffer holding the uniforms that only change once per frame.
+ * <p>Shader sources declaring any of {@link #NAMES} as plain uniforms are rewritten to read them from the shared
+ * {@code Frame} block instead, so the camera matrices and time are written to a single buffer per pass rather than to
+ * every program on every bind.</p>
+ */
+public final class FrameUniforms {
+    public static final String BLOCK = "Frame";
+    public static final int BINDING = 0;
+    public static final Set<String> NAMES = Set.of("view", "projection", "time");
+
+    private static final Pattern UNIFORM_PATTERN = Pattern.compile("^[ \\t]*uniform \\w+ (\\w+)\\s*;.*\\n?", Pattern.MULTILINE);
+    private static final Pattern VERSION_PATTERN = Pattern.compile("^\\s*#version.*\\n", Pattern.MULTILINE);
+    private static final String DECLARATION = """
+            layout (std140) uniform %s {
+                mat4 view;
+                mat4 projection;
+                float time;
+            };
+            """.formatted(BLOCK);
+
+    // std140 offsets in floats: view at 0, projection at 16, time at 32, padded to a vec4
+    private static final int VIEW = 0, PROJECTION = 16, TIME = 32, SIZE = 36;
+
+    private static final FloatBuffer buffer = BufferUtils.createFloatBuffer(SIZE);
+    private static int ubo = 0;
+
+    private FrameUniforms() {}
+
+    /** Removes the per-frame uniform declarations of a shader stage and declares the shared block in their place. */
+    public static String rewrite(String code) {
+        Matcher matcher = UNIFORM_PATTERN.matcher(code);
+        StringBuilder result = new StringBuilder();
+        boolean found = false;
+        while (matcher.find()) {
+            boolean frame = NAMES.contains(matcher.group(1));
+            found |= frame;
+            matcher.appendReplacement(result, frame ? "" : Matcher.quoteReplacement(matcher.group()));
+        }
+        matcher.appendTail(result);
+        if (!found) return code;
+
+        Matcher version = VERSION_PATTERN.matcher(result);
+        if (version.find()) return result.insert(version.end(), "\n" + DECLARATION).toString();
+        return DECLARATION + result;
+    }
+
+    /** Points the {@code Frame} block of {@code program} at the shared buffer, if the program uses it. */
+    public static void bindProgram(int program) {
+        int index = glGetUniformBlockIndex(program, BLOCK);
+        if (index != GL_INVALID_INDEX) glUniformBlockBinding(program, index, BINDING);
+    }
+
+    /** Writes the camera matrices and the current time into the block. */
+    public static void update(Camera camera) { update(camera, camera.getProjectionMatrix()); }
+
+    /** Same as {@link #update(Camera)}, with {@code projection} in place of the camera's. */
+    public static void update(Camera camera, float[] projection) {
+        if (ubo == 0) {
+            ubo = glGenBuffers();
+            glBindBuffer(GL_UNIFORM_BUFFER, ubo);
+            glBufferData(GL_UNIFORM_BUFFER, (long) SIZE * Float.BYTES, GL_DYNAMIC_DRAW);
+            glBindBufferBase(GL_UNIFORM_BUFFER, BINDING, ubo);
+        }
+
+        buffer.clear();
+        buffer.put(VIEW, camera.getViewMatrix());
+        buffer.put(PROJECTION, projection);
+        buffer.put(TIME, (float) glfwGetTime());
+
+        glBindBuffer(GL_UNIFORM_BUFFER, ubo);
+        glBufferSubData(GL_UNIFORM_BUFFER, 0, buffer);
+        glBindBuffer(GL_UNIFORM_BUFFER, 0);
+    }
+
+    public static void cleanup() {
+        if (Main.isRunning() || ubo == 0) return;
+        glDeleteBuffers(ubo);
+        ubo = 0;
+    }
+}
@@ -0,0 +1,73 @@
+package engine.managers;
+
+import engine.utils.GameLogic;
+import engine.utils.LatencyHistogram;
+
+import java.util.Locale;
+
+/**
+ * Runs a game without GLFW or OpenGL, for simulations on servers and in CI.
+ * <p>While active, shaders only parse their vertex layout and models are built CPU-side without uploading anything, so
+ * entities can be created as usual. Rendering and picking do nothing. Every tick runs the per-frame and the static
+ * updates of the game and the scene with a fixed step of {@code 1 / tps}, either back to back or paced at
+ * {@code headless_tps}, and its duration is recorded for the report.</p>
+ */
+@SuppressWarnings("unused")
+public final class Headless {
+    private static volatile boolean active = false;
+
+    private Headless() {}
+
+    /** Whether {@code headless} is set, making {@link Main} run the game through {@link #run(GameLogic)}. */
+    public static boolean isEnabled() { return DataManager.getFlag("headless"); }
+    public static boolean isActive() { return active; }
+
+    /** Runs {@code headless_ticks} ticks at {@code headless_tps} and prints the report. */
+    public static void run(GameLogic game) {
+        LatencyHistogram latency = new LatencyHistogram();
+        long ticks = Math.max(1, (long) DataManager.getSetting("headless_ticks"));
+        long elapsed = run(game, ticks, DataManager.getSetting("headless_tps"), latency);
+        System.out.println(report(ticks, elapsed, latency));
+        Tracing.export();
+    }
+
+    /**
+     * Initializes {@code game} and runs {@code ticks} ticks, {@code rate} per second or as fast as possible when it is
+     * not positive. Tick durations are recorded into {@code latency}.
+     * @return the nanoseconds spent ticking
+     */
+    public static long run(GameLogic game, long ticks, double rate, LatencyHistogram latency) {
+        active = true;
+        Shader.get("shader").bind();
+        game.initialize();
+
+        double step = 1d / DataManager.getSetting("tps");
+        long interval = rate > 0 ? (long) (1_000_000_000L / rate) : 0;
+        long begin = System.nanoTime(), next = begin;
+        for (long tick=0; tick<ticks; tick++) {
+            long start = System.nanoTime();
+            tick(game, step);
+            latency.record(System.nanoTime() - start);
+
+            if (interval == 0) continue;
+            next += interval;
+            long wait = next - System.nanoTime();
+            if (wait > 0) FramePacer.waitUntil(next);
+            else next = System.nanoTime(); // fell behind: keep the rate from here on instead of catching up
+        }
+        return System.nanoTime() - begin;
+    }
+
+    static void tick(GameLogic game, double step) {
+        Main.sceneUpdate(game, step);
+        Main.update(game, step);
+        Metrics.update();
+    }
+
+    public static String report(long ticks, long elapsed, LatencyHistogram latency) {
+        return String.format(Locale.ROOT, "Headless: %d ticks in %.3f s | TPS: %.1f | Tick: mean %.4f ms, p50 %.4f ms, p99 %.4f ms, max %.4f ms",
+                ticks, elapsed / 1e9, ticks / (elapsed / 1e9),
+                latency.getMean() / 1e6, latency.getPercentile(50) / 1e6, latency.getPercentile(99) / 1e6, latency.getMax() / 1e6
+        );
+    }
+}
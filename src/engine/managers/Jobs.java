@@ -0,0 +1,205 @@
+package engine.managers;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Engine job system running on its own work-stealing pool.
+ * <p>The pool has {@code job_workers} threads, by default one less than the cores so the thread driving GL keeps one
+ * for submission. Callers only wait on it, so work large enough for the pool never runs on the GL thread. Jobs must
+ * not touch GL either way, since smaller work runs on whichever thread asked for it.</p>
+ * <p>{@link #forEach} splits a list into chunks of at least {@code job_min_chunk} items, about four per worker, and
+ * runs lists smaller than one chunk inline without touching the pool. A {@link Graph} runs named jobs once their
+ * dependencies finished, each job timed into {@link Metrics#getJob(String)}, and runs inline as well when told it
+ * only goes through one chunk of items.</p>
+ */
+@SuppressWarnings("unused")
+public final class Jobs {
+    private static final int minChunk = Math.max(1, (int) DataManager.getSetting("job_min_chunk"));
+    private static volatile ForkJoinPool pool = null;
+    @Getter private static int workers = defaultWorkers();
+
+    private Jobs() {}
+
+    private static int defaultWorkers() {
+        int workers = (int) DataManager.getSetting("job_workers");
+        return workers > 0 ? workers : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    private static ForkJoinPool pool() {
+        ForkJoinPool p = pool;
+        if (p != null) return p;
+        synchronized (Jobs.class) {
+            if (pool == null) pool = new ForkJoinPool(workers, pool -> {
+                var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("Job Worker " + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+            return pool;
+        }
+    }
+
+    /** Replaces the pool with one of {@code workers} threads, or the {@code job_workers} default when not positive. */
+    static synchronized void setWorkers(int workers) {
+        shutdown();
+        Jobs.workers = workers > 0 ? workers : defaultWorkers();
+    }
+
+    public static synchronized void shutdown() {
+        if (pool == null) return;
+        pool.shutdown();
+        pool = null;
+    }
+
+    // --- Parallel Loops ----------------------------------------------------------------------------------------------
+
+    /** Runs {@code action} on every item of {@code items}, in parallel once the list is larger than a chunk. */
+    public static <T> void forEach(List<T> items, Consumer<? super T> action) {
+        int size = items.size();
+        if (isInline(size)) {
+            for (int i=0; i<size; i++) action.accept(items.get(i));
+            return;
+        }
+
+        int chunk = Math.max(minChunk, size / (workers * 4));
+        Chunk<T> task = new Chunk<>(items, action, 0, size, chunk);
+        if (inPool()) task.invoke();
+        else pool().invoke(task);
+    }
+
+    /** Whether {@code size} items are too few to be worth handing to the pool. */
+    private static boolean isInline(int size) { return size <= minChunk || workers == 1 && !inPool(); }
+
+    private static boolean inPool() {
+        ForkJoinPool p = pool;
+        return p != null && ForkJoinTask.getPool() == p;
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Chunk<T> extends RecursiveAction {
+        private final List<T> items;
+        private final Consumer<? super T> action;
+        private final int from, to, chunk;
+
+        private Chunk(List<T> items, Consumer<? super T> action, int from, int to, int chunk) {
+            this.items = items;
+            this.action = action;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunk) {
+                for (int i=from; i<to; i++) action.accept(items.get(i));
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Chunk<>(items, action, from, middle, chunk), new Chunk<>(items, action, middle, to, chunk));
+        }
+    }
+
+    // --- Job Graphs --------------------------------------------------------------------------------------------------
+
+    /** A named piece of work in a {@link Graph}. */
+    public static final class Job {
+        @Getter private final String name;
+        private final Runnable work;
+        private final List<Job> dependents = new ArrayList<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private int dependencies = 0;
+
+        private Job(String name, Runnable work) {
+            this.name = name;
+            this.work = work;
+        }
+    }
+
+    /**
+     * Jobs with dependencies, built once and run as often as needed, such as every frame. Jobs start on the pool as
+     * soon as every job they depend on finished, and {@link #run()} returns once all of them did. Jobs can only
+     * depend on jobs added before them, so a graph never has cycles.
+     */
+    public static final class Graph {
+        private final List<Job> jobs = new ArrayList<>();
+        private volatile CountDownLatch done;
+        private volatile Throwable failure;
+
+        public Job add(String name, Runnable work, Job... after) {
+            Job job = new Job(name, work);
+            for (Job dependency: after) {
+                if (!jobs.contains(dependency)) throw new IllegalArgumentException("Job \"%s\" depends on a job outside its graph.".formatted(name));
+                dependency.dependents.add(job);
+                job.dependencies++;
+            }
+            jobs.add(job);
+            return job;
+        }
+
+        /**
+         * Runs every job like {@link #run()}, or one after the other on the calling thread when the jobs only go
+         * through {@code size} items, no more than a chunk of {@link #forEach}. Jobs run in the order they were added,
+         * which respects every dependency.
+         */
+        public void run(int size) {
+            if (!isInline(size)) {
+                run();
+                return;
+            }
+            for (Job job: jobs) {
+                long start = Metrics.start();
+                try { job.work.run(); }
+                finally { Metrics.recordJob(job.name, start); }
+            }
+        }
+
+        /** Runs every job and waits for them, rethrowing the first failure. */
+        public void run() {
+            if (jobs.isEmpty()) return;
+            for (Job job: jobs) job.pending.set(job.dependencies);
+            failure = null;
+            done = new CountDownLatch(jobs.size());
+
+            for (Job job: jobs) if (job.dependencies == 0) start(job);
+            try { done.await(); }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for jobs.", e);
+            }
+
+            Throwable t = failure;
+            if (t instanceof RuntimeException e) throw e;
+            if (t instanceof Error e) throw e;
+            if (t != null) throw new RuntimeException(t);
+        }
+
+        private void start(Job job) {
+            ForkJoinTask<?> task = ForkJoinTask.adapt(() -> execute(job));
+            if (inPool()) task.fork();
+            else pool().execute(task);
+        }
+
+        private void execute(Job job) {
+            long start = Metrics.start();
+            try {
+                if (failure == null) job.work.run();
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                Metrics.recordJob(job.name, start);
+                for (Job next: job.dependents) if (next.pending.decrementAndGet() == 0) start(next);
+                done.countDown();
+            }
+        }
+    }
+}
@@ -1,11 +1,13 @@
 package engine.managers;
 
+import engine.utils.Entity;
 import engine.utils.GameLogic;
 import game.Game;
 import lombok.Getter;
 import org.lwjgl.glfw.GLFWErrorCallback;
 
 import java.text.DecimalFormat;
+import java.util.List;
 import java.util.Objects;
 
 import static org.lwjgl.glfw.GLFW.*;
@@ -15,10 +17,16 @@ public class Main {
     private static final GameLogic game = new Game();
     @Getter private static boolean running = true;
     private static int clearMask = GL_COLOR_BUFFER_BIT;
+    private static final boolean threaded = DataManager.getFlag("threaded_simulation");
 
     private Main() {}
 
     public static void main(String[] args) {
+        if (Headless.isEnabled()) {
+            Headless.run(game);
+            return;
+        }
+
         initialize();
         run();
         cleanup();
@@ -26,32 +34,87 @@ public class Main {
 
     private static void spatialRender() {
         if (SpatialManager.isPaused()) return;
+        Scene scene = Scene.get();
+        List<Entity> entities = threaded ? Simulation.interpolate() : scene.objects();
+        SpatialManager.beginPass(scene.getCamera());
+        long start = Metrics.start();
+        long version = threaded ? Simulation.getSpatialVersion() : scene.getSpatialVersion();
+        if (!SpatialManager.needsPass(scene.getCamera(), version)) {
+            SpatialManager.reuse();
+            Metrics.record(Metrics.Phase.SPATIAL_SKIP, start);
+            return;
+        }
+        if (SpatialManager.isRaycast()) {
+            spatialRaycast(entities);
+            return;
+        }
+
+        Tracing.PhaseEvent event = Tracing.phase("spatialRender");
         SpatialManager.bind();
-        glClearColor(0, 0, 0, 1);
-        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+        SpatialManager.clear();
         SpatialManager.setViewport();
-        Scene.get().renderSpatial();
+        start = Metrics.start();
+        scene.renderSpatial(entities);
+        Metrics.record(Metrics.Phase.SPATIAL_PASS, start);
         Window.setViewport();
+        start = Metrics.start();
         SpatialManager.searchID();
+        Metrics.record(Metrics.Phase.READ_PIXELS, start);
         SpatialManager.unbind();
         TextureAtlas.bind();
+        Tracing.end(event, Scene.get().getSpatialQueue().getSize(), Scene.get().getSpatialQueue().getDraws());
+    }
+
+    private static void spatialRaycast(List<Entity> entities) {
+        Tracing.PhaseEvent event = Tracing.phase("spatialRaycast");
+        long start = Metrics.start();
+        SpatialManager.raycast(entities);
+        Metrics.record(Metrics.Phase.SPATIAL_PASS, start);
+        Tracing.end(event, entities.size(), 0);
     }
 
     private static void render(int clearMask, double t) {
+        Tracing.PhaseEvent event = Tracing.phase("render");
+        long frame = Metrics.start(), start = frame;
         Window.frameUpdate();
+        Metrics.record(Metrics.Phase.BUFFER_SWAP, start);
         glClear(clearMask);
 
-        game.update(t);
-        Scene.get().update(t);
-        Scene.get().render();
+        if (threaded) {
+            synchronized (Simulation.getLock()) { sceneUpdate(game, t); }
+            start = Metrics.start();
+            Scene.get().render(Simulation.interpolate());
+        } else {
+            sceneUpdate(game, t);
+            start = Metrics.start();
+            Scene.get().render();
+        }
+        Metrics.record(Metrics.Phase.RENDER_SUBMIT, start);
+        Shader.endFrame();
 
         InputManager.update();
         glfwPollEvents();
+        Metrics.record(Metrics.Phase.FRAME, frame);
+        Metrics.update();
+        Tracing.end(event, Scene.get().getRenderQueue().getSize(), Scene.get().getRenderQueue().getDraws());
+    }
+
+    static void sceneUpdate(GameLogic game, double t) {
+        long start = Metrics.start();
+        game.update(t);
+        Metrics.record(Metrics.Phase.GAME_UPDATE, start);
+        start = Metrics.start();
+        Scene.get().update(t);
+        Metrics.record(Metrics.Phase.SCENE_UPDATE, start);
     }
 
-    private static void update(double t) {
+    static void update(GameLogic game, double t) {
+        Tracing.PhaseEvent event = Tracing.phase("update");
+        long start = Metrics.start();
         game.staticUpdate(t);
         Scene.get().staticUpdate(t);
+        Metrics.record(Metrics.Phase.STATIC_UPDATE, start);
+        Tracing.end(event, Scene.get().objects().size(), 0);
     }
 
     private static void run() {
@@ -59,6 +122,7 @@ public class Main {
         double targetFPS = 1d / Math.max(1e-9, DataManager.getSetting("fps")); // frames per second
         double targetTPS = 1d / DataManager.getSetting("tps");                 // ticks  per second
         double targetSRR = 1d / DataManager.getSetting("spatial_fps");         // spatial refresh rate
+        double targetIdle = 1d / Math.max(1e-9, DataManager.getSetting("idle_fps")); // frames per second while idle
         boolean uncappedFPS = DataManager.getFlag("uncapped_FPS");
         boolean spacialMatchFPS = DataManager.getFlag("spatial_match_fps");
 
@@ -66,6 +130,7 @@ public class Main {
         long start, end = System.nanoTime(), passedTime;
         double timeRender = 0, timeStatic = 0, timeSpatial = 0;
         int fpsCounter = 0, tpsCounter = 0, srrCounter = 0;
+        long ticks = Simulation.getTicks();
 
         boolean showMetrics = DataManager.getFlag("show_metrics_on_window_title");
 
@@ -80,15 +145,20 @@ public class Main {
             timeSpatial += elapsedTime;
             tFPS += elapsedTime;
 
+            boolean idle = Window.isIdle();
+            double frameTime = idle ? Math.max(targetFPS, targetIdle) : targetFPS;
+            double spatialTime = idle ? Math.max(targetSRR, targetIdle) : targetSRR;
+            boolean paced = idle || !(Window.isVSync() || uncappedFPS);
+
             // Spatial Rendering
-            if (!spacialMatchFPS && timeSpatial >= targetSRR) {
+            if (!spacialMatchFPS && timeSpatial >= spatialTime) {
                 spatialRender();
-                timeSpatial %= targetSRR;
+                timeSpatial %= spatialTime;
                 srrCounter++;
             }
 
             // Rendering
-            if (Window.isVSync() || uncappedFPS) {
+            if (!paced) {
                 if (spacialMatchFPS) {
                     spatialRender();
                     srrCounter++;
@@ -96,19 +166,21 @@ public class Main {
                 render(clearMask, timeRender);
                 timeRender = 0;
                 fpsCounter++;
-            } else if (timeRender >= targetFPS) {
+            } else if (timeRender >= frameTime) {
                 if (spacialMatchFPS) {
                     spatialRender();
                     srrCounter++;
                 }
                 render(clearMask, timeRender);
-                timeRender %= targetFPS;
+                timeRender %= frameTime;
                 fpsCounter++;
             }
 
             // Static Update
-            if (timeStatic >= targetTPS) {
-                update(targetTPS);
+            if (threaded) {
+                timeStatic = 0;
+            } else if (timeStatic >= targetTPS) {
+                update(game, targetTPS);
                 timeStatic %= targetTPS;
                 tpsCounter++;
             }
@@ -116,13 +188,27 @@ public class Main {
             // FPS
             if (showMetrics && tFPS >= 1.) {
                 tFPS %= 1.;
-                Window.setTitle("FPS: %s | TPS: %s | SRR: %s".formatted(
+                if (threaded) {
+                    tpsCounter = (int) (Simulation.getTicks() - ticks);
+                    ticks = Simulation.getTicks();
+                }
+                Window.setTitle("FPS: %s | TPS: %s | SRR: %s | Uniforms: %s sent, %s skipped".formatted(
                         format.format(fpsCounter).replaceAll(",", "."),
                         format.format(tpsCounter).replaceAll(",", "."),
-                        format.format(srrCounter).replaceAll(",", ".")
+                        format.format(srrCounter).replaceAll(",", "."),
+                        format.format(Shader.getFrameUploadsIssued()).replaceAll(",", "."),
+                        format.format(Shader.getFrameUploadsSkipped()).replaceAll(",", ".")
                 ));
                 fpsCounter = tpsCounter = srrCounter = 0;
             }
+
+            // Pacing: sleep until the next frame, tick or spatial pass is due instead of spinning
+            if (paced) {
+                double wait = frameTime - timeRender;
+                if (!threaded) wait = Math.min(wait, targetTPS - timeStatic);
+                if (!spacialMatchFPS) wait = Math.min(wait, spatialTime - timeSpatial);
+                FramePacer.waitUntil(end + (long) (wait * 1_000_000_000L));
+            }
         }
     }
 
@@ -139,13 +225,18 @@ public class Main {
         if (DataManager.getFlag("blend_test")) { glEnable(GL_BLEND); glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA); }
 
         game.initialize();
+        if (threaded) Simulation.start(game);
     }
 
     private static void cleanup() {
         running = false;
+        Simulation.stop();
+        Jobs.shutdown();
+        Tracing.export();
 
         Window.cleanup();
         Shader.cleanup();
+        FrameUniforms.cleanup();
         Model.cleanup();
         SpatialManager.cleanup();
         TextureAtlas.cleanup();
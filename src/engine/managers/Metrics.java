@@ -0,0 +1,132 @@
+package engine.managers;
+
+import engine.utils.LatencyHistogram;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Per-phase frame timings.
+ * <p>Each {@link Phase} records its durations into a {@link LatencyHistogram}, so percentiles can be read at any time
+ * without allocating on the recording side. With {@code metrics_dump_interval} set, a snapshot of every phase is
+ * appended to a CSV file under {@code metrics/} (JSON lines with {@code metrics_dump_json}) for comparing runs.</p>
+ * <p>Jobs run through {@link Jobs.Graph} are timed the same way under their name, and dumped after the phases as
+ * {@code job:<name>}.</p>
+ * <p>Recording is off unless the {@code metrics} flag is set. Timings are cumulative until {@link #reset()}.</p>
+ */
+@SuppressWarnings("unused")
+public final class Metrics {
+    /**
+     * Frame phases. {@code FRAME} spans a whole render frame, including the update, submit and swap phases.
+     * {@code SPATIAL_SKIP} times the spatial passes that found nothing changed and only re-read the cached target, so
+     * its count against {@code SPATIAL_PASS} gives skipped versus executed passes. {@code PACING_JITTER} is how late
+     * the {@link FramePacer} woke up past each deadline.
+     */
+    public enum Phase { FRAME, GAME_UPDATE, SCENE_UPDATE, RENDER_SUBMIT, SPATIAL_PASS, SPATIAL_SKIP, READ_PIXELS, STATIC_UPDATE, BUFFER_SWAP, PACING_JITTER }
+
+    private static final boolean enabled = DataManager.getFlag("metrics");
+    private static final double dumpInterval = DataManager.getSetting("metrics_dump_interval");
+    private static final boolean dumpJson = DataManager.getFlag("metrics_dump_json");
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    private static final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+    private static final Map<String, LatencyHistogram> jobs = new ConcurrentSkipListMap<>();
+    private static final long startTime = System.nanoTime();
+    private static long lastDump = startTime;
+    private static Path dumpFile = null;
+
+    static { for (int i=0; i<histograms.length; i++) histograms[i] = new LatencyHistogram(); }
+
+    private Metrics() {}
+
+    public static boolean isEnabled() { return enabled; }
+
+    /** Timestamp to hand back to {@link #record(Phase, long)}, or 0 while metrics are disabled. */
+    public static long start() { return enabled ? System.nanoTime() : 0; }
+
+    public static void record(Phase phase, long start) {
+        if (enabled) histograms[phase.ordinal()].record(System.nanoTime() - start);
+    }
+
+    /** Records a job of a {@link Jobs.Graph}. A job runs once per graph run, so each histogram still has one writer. */
+    public static void recordJob(String job, long start) {
+        if (enabled) jobs.computeIfAbsent(job, _ -> new LatencyHistogram()).record(System.nanoTime() - start);
+    }
+
+    public static LatencyHistogram get(Phase phase) { return histograms[phase.ordinal()]; }
+    public static LatencyHistogram getJob(String job) { return jobs.getOrDefault(job, new LatencyHistogram()); }
+
+    public static double getPercentile(Phase phase, double percentile) { return get(phase).getPercentile(percentile) / 1e6; }
+    public static double getMedian(Phase phase) { return getPercentile(phase, 50); }
+    public static double getMax(Phase phase) { return get(phase).getMax() / 1e6; }
+
+    public static void reset() {
+        for (LatencyHistogram histogram: histograms) histogram.reset();
+        jobs.values().forEach(LatencyHistogram::reset);
+    }
+
+    /** Called once per frame. Appends a snapshot to the dump file whenever {@code metrics_dump_interval} elapsed. */
+    public static void update() {
+        if (!enabled || dumpInterval <= 0) return;
+        long now = System.nanoTime();
+        if (now - lastDump < dumpInterval * 1_000_000_000L) return;
+        lastDump = now;
+        dump();
+    }
+
+    public static void dump() {
+        try {
+            if (dumpFile == null) {
+                Files.createDirectories(Path.of("metrics"));
+                dumpFile = Path.of("metrics", LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss")) + (dumpJson ? ".jsonl" : ".csv"));
+                if (!dumpJson) Files.writeString(dumpFile, "elapsed_s,phase,count,mean_ms,p50_ms,p90_ms,p99_ms,max_ms\n");
+            }
+            try (Writer writer = new FileWriter(dumpFile.toFile(), true)) {
+                writer.write(dumpJson ? toJson() : toCsv());
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write metrics: " + e.getMessage());
+        }
+    }
+
+    public static String toCsv() {
+        StringBuilder result = new StringBuilder();
+        String elapsed = format((System.nanoTime() - startTime) / 1e9);
+        for (Phase phase: Phase.values()) appendCsv(result, elapsed, phase.name().toLowerCase(), get(phase));
+        for (Map.Entry<String, LatencyHistogram> job: jobs.entrySet()) appendCsv(result, elapsed, "job:" + job.getKey(), job.getValue());
+        return result.toString();
+    }
+
+    public static String toJson() {
+        StringBuilder result = new StringBuilder("{\"elapsed_s\":").append(format((System.nanoTime() - startTime) / 1e9)).append(",\"phases\":{");
+        for (Phase phase: Phase.values()) appendJson(result, phase.name().toLowerCase(), get(phase));
+        for (Map.Entry<String, LatencyHistogram> job: jobs.entrySet()) appendJson(result, "job:" + job.getKey(), job.getValue());
+        result.setLength(result.length() - 1);
+        return result.append("}}\n").toString();
+    }
+
+    private static void appendCsv(StringBuilder result, String elapsed, String name, LatencyHistogram histogram) {
+        result.append(elapsed).append(',').append(name).append(',').append(histogram.getCount())
+                .append(',').append(format(histogram.getMean() / 1e6));
+        for (double percentile: PERCENTILES) result.append(',').append(format(histogram.getPercentile(percentile) / 1e6));
+        result.append(',').append(format(histogram.getMax() / 1e6)).append('\n');
+    }
+
+    private static void appendJson(StringBuilder result, String name, LatencyHistogram histogram) {
+        result.append('"').append(name).append("\":{\"count\":").append(histogram.getCount())
+                .append(",\"mean_ms\":").append(format(histogram.getMean() / 1e6));
+        for (double percentile: PERCENTILES)
+            result.append(",\"p").append((int) percentile).append("_ms\":").append(format(histogram.getPercentile(percentile) / 1e6));
+        result.append(",\"max_ms\":").append(format(histogram.getMax() / 1e6)).append("},");
+    }
+
+    private static String format(double value) { return String.format(Locale.ROOT, "%.4f", value); }
+}
@@ -1,6 +1,7 @@
 package engine.managers;
 
 import engine.utils.BoundingBox;
+import engine.utils.TriangleTree;
 import engine.utils.Vector;
 import lombok.Getter;
 
@@ -17,19 +18,23 @@ import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL11C.GL_POINTS;
 import static org.lwjgl.opengl.GL11C.GL_TRIANGLES;
 import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL31.glDrawElementsInstanced;
 
 @SuppressWarnings("unused")
 public final class Model {
     private static final String INDICES_FIELD = "Indices", TEXTURES_FIELD = "Texture";
     private static final Pattern pattern = Pattern.compile("\\$\\s*(byte|short|integer|int|long|float|double)?\\s*([a-z].*)", Pattern.CASE_INSENSITIVE);
     private static final Map<String, Map<String, Model>> models = new HashMap<>();
+    private static int modelCount = 0;
 
     public static Model get(String model) {return get(model, Shader.get());}
     public static Model get(String model, String shader) {return get(model, Shader.get(shader));}
     public static Model get(String model, Shader shader) {
         Map<String, Model> shaderMap = getShaderMap(shader);
         if (shaderMap.containsKey(model)) return shaderMap.get(model);
+        Tracing.AssetEvent event = Tracing.asset("model", model);
         Model m = new Model(model, shader);
+        Tracing.end(event, m.vertexCount);
         shaderMap.put(model, m);
         return m;
     }
@@ -74,24 +79,33 @@ public final class Model {
     private int activeType = 4;
     private String activeParameter = null;
     @Getter private final String fileName, name;
+    @Getter private final int sortId = modelCount++;
     private final int VBO, EBO;
     private int vertexCount = 0;
     private boolean cullFront = false, cullBack = true, active = true;
     private int[] indicesBuffer;
     private float[] verticesBuffer;
+    private int vertexSize, positionOffset = -1;
+    private volatile TriangleTree triangleTree = null;
     @Getter private final BoundingBox boundingBox = new BoundingBox();
 
-    private Model(String model, Shader shader) {
+    /** Parses and builds the vertices of {@code model}. Nothing is uploaded for a shader that was not compiled. */
+    Model(String model, Shader shader) {
         if ((fileName = parseModel(name = model)) == null) throw new RuntimeException("File \"models/%s\" not found or supported.".formatted(model));
         generateVertices(shader);
+        this.shader = shader;
+
+        if (!shader.isCompiled()) {
+            VBO = EBO = 0;
+            active = false;
+            return;
+        }
 
         glBindBuffer(GL_ARRAY_BUFFER, VBO = glGenBuffers());
         glBufferData(GL_ARRAY_BUFFER, verticesBuffer, GL_STATIC_DRAW);
 
         glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, EBO = glGenBuffers());
         glBufferData(GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL_STATIC_DRAW);
-
-        this.shader = shader;
     }
 
     public void bindVBO() {
@@ -103,6 +117,19 @@ public final class Model {
     public void render() {
         if (!active) return;
 
+        prepare();
+        glDrawElements(type, vertexCount, GL_UNSIGNED_INT, 0);
+    }
+
+    /** Draws {@code count} instances, reading per-instance attributes from the shader's instance buffer. */
+    public void renderInstanced(int count) {
+        if (!active || count <= 0) return;
+
+        prepare();
+        glDrawElementsInstanced(type, vertexCount, GL_UNSIGNED_INT, 0, count);
+    }
+
+    private void prepare() {
         if (cullFront || cullBack) {
             glEnable(GL_CULL_FACE);
             glCullFace(cullFront ? GL_FRONT : GL_BACK);
@@ -112,8 +139,59 @@ public final class Model {
         shader.bind();
         bindVBO();
         glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, EBO);
+    }
 
-        glDrawElements(type, vertexCount, GL_UNSIGNED_INT, 0);
+    /**
+     * The triangles of the model in a {@link TriangleTree}, built from its vertices on first use. Points and lines have
+     * no triangles, and neither does a shader without a {@code Position} field, so their tree is empty.
+     */
+    public TriangleTree getTriangleTree() {
+        TriangleTree tree = triangleTree;
+        if (tree != null) return tree;
+        synchronized (this) {
+            if (triangleTree == null) triangleTree = positionOffset < 0
+                    ? new TriangleTree(verticesBuffer, vertexSize, 0, new int[0])
+                    : new TriangleTree(verticesBuffer, vertexSize, positionOffset, triangulate());
+            return triangleTree;
+        }
+    }
+
+    /** Splits the indices into one list of three indices per triangle, following the drawing mode. */
+    private int[] triangulate() {
+        int[] i = indicesBuffer;
+        int n = i.length;
+        int[] triangles = switch (type) {
+            case GL_TRIANGLES -> Arrays.copyOf(i, n - n % 3);
+            case GL_TRIANGLE_STRIP, GL_QUAD_STRIP, GL_TRIANGLE_FAN -> new int[Math.max(0, n - 2) * 3];
+            case GL_QUADS -> new int[n / 4 * 6];
+            default -> new int[0];
+        };
+        switch (type) {
+            case GL_TRIANGLE_STRIP, GL_QUAD_STRIP -> {
+                for (int t=0; t<n-2; t++) {
+                    boolean odd = (t & 1) == 1; // keeps the winding of every other triangle
+                    triangles[t*3]   = i[t];
+                    triangles[t*3+1] = i[odd ? t+2 : t+1];
+                    triangles[t*3+2] = i[odd ? t+1 : t+2];
+                }
+            }
+            case GL_TRIANGLE_FAN -> {
+                for (int t=0; t<n-2; t++) {
+                    triangles[t*3]   = i[0];
+                    triangles[t*3+1] = i[t+1];
+                    triangles[t*3+2] = i[t+2];
+                }
+            }
+            case GL_QUADS -> {
+                for (int q=0; q<n/4; q++) {
+                    int o = q * 6, v = q * 4;
+                    triangles[o]   = i[v];   triangles[o+1] = i[v+1]; triangles[o+2] = i[v+2];
+                    triangles[o+3] = i[v];   triangles[o+4] = i[v+2]; triangles[o+5] = i[v+3];
+                }
+            }
+            default -> {}
+        }
+        return triangles;
     }
 
     private void cleanupBuffers() {
@@ -126,7 +204,10 @@ public final class Model {
 
     private void generateVertices(Shader shader) {
         List<String> sortedFields = new ArrayList<>(fields.keySet());
-        int vertexSize = shader.getVertexSize();
+        vertexSize = shader.getVertexSize();
+        int position = shader.getFieldLocation("Position");
+        if (position != -1) positionOffset = shader.getLayoutOffset(position);
+        int p = Math.max(positionOffset, 0);
 
         List<engine.utils.Vector> buffer = new ArrayList<>();
         List<Integer> indices = new ArrayList<>();
@@ -187,14 +268,14 @@ public final class Model {
         }
 
         boundingBox.setMin(
-                buffer.stream().mapToDouble(engine.utils.Vector::getFirstDouble).min().orElse(0),
-                buffer.stream().mapToDouble(v -> v.getDouble(1)).min().orElse(0),
-                buffer.stream().mapToDouble(v -> v.getDouble(2)).min().orElse(0)
+                buffer.stream().mapToDouble(v -> v.getDouble(p)).min().orElse(0),
+                buffer.stream().mapToDouble(v -> v.getDouble(p+1)).min().orElse(0),
+                buffer.stream().mapToDouble(v -> v.getDouble(p+2)).min().orElse(0)
         );
         boundingBox.setMax(
-                buffer.stream().mapToDouble(engine.utils.Vector::getFirstDouble).max().orElse(0),
-                buffer.stream().mapToDouble(v -> v.getDouble(1)).max().orElse(0),
-                buffer.stream().mapToDouble(v -> v.getDouble(2)).max().orElse(0)
+                buffer.stream().mapToDouble(v -> v.getDouble(p)).max().orElse(0),
+                buffer.stream().mapToDouble(v -> v.getDouble(p+1)).max().orElse(0),
+                buffer.stream().mapToDouble(v -> v.getDouble(p+2)).max().orElse(0)
         );
 
         double[] flattened = buffer.stream().map(engine.utils.Vector::toDoubleArray).flatMapToDouble(Arrays::stream).toArray();
@@ -0,0 +1,136 @@
+package engine.managers;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.BufferUtils.createByteBuffer;
+import static org.lwjgl.opengl.GL32.*;
+
+/**
+ * Framebuffer the engine draws into instead of the window when {@code offscreen} is set.
+ * <p>The window stays hidden and is never swapped, so frames are paced by the engine alone, without a compositor or
+ * vsync. The framebuffer is {@code offscreen_width} by {@code offscreen_height} with a depth buffer, and is bound
+ * wherever the default framebuffer would be, so the scene and spatial passes draw into it unchanged.</p>
+ * <p>With {@code offscreen_readback} set, every frame is read back asynchronously: it is copied into one of
+ * {@link #BUFFERS} pixel buffers and mapped a few frames later, once its fence signalled. While every buffer is still
+ * in flight, frames are not read back, so the pipeline never stalls. The latest frame read is available from
+ * {@link #getFrame()}.</p>
+ */
+@SuppressWarnings("unused")
+public final class Offscreen {
+    private static final int BUFFERS = 3;
+    private static boolean enabled = DataManager.getFlag("offscreen");
+    private static final boolean readback = DataManager.getFlag("offscreen_readback");
+    private static final long maxFrames = (long) DataManager.getSetting("offscreen_frames");
+
+    @Getter private static int framebuffer = 0;
+    private static int color, depth;
+    private static int width, height;
+    private static final int[] pixelBuffers = new int[BUFFERS];
+    private static final long[] fences = new long[BUFFERS];
+    private static ByteBuffer frame = null;
+    @Getter private static long frames = 0, framesRead = 0, framesSkipped = 0;
+    private static long issued = 0, collected = 0;
+    private static long startTime;
+
+    private Offscreen() {}
+
+    public static boolean isEnabled() { return enabled; }
+
+    /** Turns the mode on whatever {@code offscreen} says, for tools such as the scenario benchmarks. Must precede the window. */
+    static void enable() { enabled = true; }
+    public static int getWidth() { return Math.max(1, (int) DataManager.getSetting("offscreen_width")); }
+    public static int getHeight() { return Math.max(1, (int) DataManager.getSetting("offscreen_height")); }
+
+    /** Whether {@code offscreen_frames} frames were drawn. Never true while that setting is 0. */
+    public static boolean isFinished() { return maxFrames > 0 && frames >= maxFrames; }
+
+    /** The pixels of the latest frame read back, in RGBA rows from the bottom up, or {@code null} before the first. */
+    public static ByteBuffer getFrame() { return framesRead == 0 ? null : frame; }
+
+    static void initialize() {
+        if (!enabled || framebuffer != 0) return;
+        width = getWidth();
+        height = getHeight();
+
+        glBindRenderbuffer(GL_RENDERBUFFER, color = glGenRenderbuffers());
+        glRenderbufferStorage(GL_RENDERBUFFER, GL_RGBA8, width, height);
+        glBindRenderbuffer(GL_RENDERBUFFER, depth = glGenRenderbuffers());
+        glRenderbufferStorage(GL_RENDERBUFFER, GL_DEPTH_COMPONENT24, width, height);
+        glBindRenderbuffer(GL_RENDERBUFFER, 0);
+
+        glBindFramebuffer(GL_FRAMEBUFFER, framebuffer = glGenFramebuffers());
+        glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_RENDERBUFFER, color);
+        glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_RENDERBUFFER, depth);
+        if (glCheckFramebufferStatus(GL_FRAMEBUFFER) != GL_FRAMEBUFFER_COMPLETE)
+            throw new RuntimeException("Error instantiating the offscreen FrameBuffer.");
+        Window.setViewport(); // the hidden window is 1x1
+
+        if (readback) {
+            frame = createByteBuffer(width * height * 4);
+            glGenBuffers(pixelBuffers);
+            for (int buffer: pixelBuffers) {
+                glBindBuffer(GL_PIXEL_PACK_BUFFER, buffer);
+                glBufferData(GL_PIXEL_PACK_BUFFER, (long) width * height * 4, GL_STREAM_READ);
+            }
+            glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+        }
+        startTime = System.nanoTime();
+    }
+
+    /** Ends a frame: collects every readback that finished and, if readback is on, starts the one of this frame. */
+    static void present() {
+        frames++;
+        if (!readback) {
+            glFlush();
+            return;
+        }
+
+        while (collected < issued && collect((int) (collected % BUFFERS))) collected++;
+
+        if (issued - collected < BUFFERS) {
+            int slot = (int) (issued++ % BUFFERS);
+            glPixelStorei(GL_PACK_ALIGNMENT, 1);
+            glBindBuffer(GL_PIXEL_PACK_BUFFER, pixelBuffers[slot]);
+            glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, 0);
+            fences[slot] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+            glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+        } else framesSkipped++; // all buffers in flight: skip this frame rather than wait for the GPU
+        glFlush();
+    }
+
+    /** Maps the readback in {@code slot} if its fence signalled, returning whether the slot is free again. */
+    private static boolean collect(int slot) {
+        int status = glClientWaitSync(fences[slot], GL_SYNC_FLUSH_COMMANDS_BIT, 0);
+        if (status == GL_TIMEOUT_EXPIRED) return false;
+        glDeleteSync(fences[slot]);
+        fences[slot] = 0;
+        if (status == GL_WAIT_FAILED) return true;
+
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, pixelBuffers[slot]);
+        ByteBuffer mapped = glMapBuffer(GL_PIXEL_PACK_BUFFER, GL_READ_ONLY);
+        if (mapped != null) {
+            frame.clear();
+            frame.put(mapped).flip();
+            framesRead++;
+            glUnmapBuffer(GL_PIXEL_PACK_BUFFER);
+        }
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+        return true;
+    }
+
+    static void cleanup() {
+        if (framebuffer == 0 || Main.isRunning()) return;
+
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.out.printf("Offscreen: %d frames at %dx%d in %.3f s (%.1f FPS), %d read back, %d skipped.%n", frames, width, height, seconds, frames / seconds, framesRead, framesSkipped);
+
+        for (int i=0; i<BUFFERS; i++) if (fences[i] != 0) { glDeleteSync(fences[i]); fences[i] = 0; }
+        if (readback) glDeleteBuffers(pixelBuffers);
+        glDeleteFramebuffers(framebuffer);
+        glDeleteRenderbuffers(color);
+        glDeleteRenderbuffers(depth);
+        framebuffer = 0;
+    }
+}
@@ -0,0 +1,134 @@
+package engine.managers;
+
+import engine.utils.Camera;
+import engine.utils.Entity;
+import lombok.Getter;
+import org.joml.Vector3d;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Persistent, state-sorted list of draws.
+ * <p>Each visible entity gets a 64-bit key. Opaque draws are keyed on shader, model and front-to-back view depth, so
+ * program and buffer switches happen once per group. Transparent draws set the top bit to land after every opaque
+ * draw and are keyed on back-to-front view depth. Keys are ordered with an LSD radix sort that skips the bytes all keys
+ * share, and every array is reused between frames. Runs of entities sharing an instanced model are submitted as one
+ * instanced draw, whose instance buffer is only rewritten when an entity in the run reports a new version.</p>
+ */
+@SuppressWarnings("unused")
+public final class RenderQueue {
+    private static final long TRANSPARENT = 1L << 63;
+
+    private Entity[] entities = new Entity[256];
+    private long[] keys = new long[256], keysScratch = new long[256];
+    private int[] values = new int[256], valuesScratch = new int[256];
+    private final int[] histogram = new int[8 * 256];
+    private final Vector3f position = new Vector3f();
+    @Getter private int size = 0, draws = 0, shaderChanges = 0, modelChanges = 0;
+
+    public void build(List<Entity> objects, Camera camera, boolean spatial) {
+        clear();
+        Vector3d eye = camera.getPosition(), front = camera.getFront();
+
+        for (Entity e: objects) {
+            if (!e.isRenderVisible()) continue;
+            e.getRenderPosition(position);
+            double depth = (position.x - eye.x) * front.x + (position.y - eye.y) * front.y + (position.z - eye.z) * front.z;
+            add(e, key(e, (float) depth, spatial));
+        }
+        sort();
+    }
+
+    /** Draws the queue in key order. Consecutive entries sharing an instanced model are merged into a single draw. */
+    public void submit(boolean spatial) {
+        draws = shaderChanges = modelChanges = 0;
+        Shader spatialShader = spatial ? Shader.get("spatial_shader") : null;
+        Shader lastShader = null;
+        Model lastModel = null;
+
+        for (int i=0; i<size; i++) {
+            Entity e = entities[values[i]];
+            Model model = spatial ? e.getRenderModel(spatialShader) : e.getRenderModel();
+            if (model.shader != lastShader) { shaderChanges++; lastShader = model.shader; }
+            if (model != lastModel) { modelChanges++; lastModel = model; }
+            draws++;
+
+            if (!model.shader.isInstanced()) {
+                if (spatial) e.spatialRender();
+                else e.render();
+                continue;
+            }
+
+            Shader shader = model.shader;
+            shader.bind();
+            shader.applyUniforms(e);
+            shader.beginInstances(model);
+            shader.addInstance(e, e.getVersion());
+            while (i+1 < size && modelOf(entities[values[i+1]], spatialShader) == model) {
+                Entity next = entities[values[++i]];
+                shader.addInstance(next, next.getVersion());
+            }
+            model.renderInstanced(shader.uploadInstances());
+        }
+    }
+
+    private Model modelOf(Entity e, Shader spatialShader) { return spatialShader == null ? e.getRenderModel() : e.getRenderModel(spatialShader); }
+
+    public void clear() {
+        Arrays.fill(entities, 0, size, null);
+        size = 0;
+    }
+
+    private long key(Entity e, float depth, boolean spatial) {
+        long depthBits = Float.floatToRawIntBits(Math.max(depth, 0)) & 0xFFFFFFFFL;
+        Model drawn = e.getRenderModel();
+        long shader = (spatial ? 0 : drawn.shader.getSortId()) & 0x7FFF;
+        long model = drawn.getSortId() & 0xFFFF;
+
+        if (!spatial && e.isRenderTransparent()) return TRANSPARENT | (~depthBits & 0xFFFFFFFFL) << 31 | shader << 16 | model;
+        return shader << 48 | model << 32 | depthBits;
+    }
+
+    private void add(Entity e, long key) {
+        if (size == entities.length) {
+            int capacity = size * 2;
+            entities = Arrays.copyOf(entities, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+            keysScratch = new long[capacity];
+            valuesScratch = new int[capacity];
+        }
+        entities[size] = e;
+        keys[size] = key;
+        values[size] = size++;
+    }
+
+    private void sort() {
+        Arrays.fill(histogram, 0);
+        for (int i=0; i<size; i++) {
+            long key = keys[i];
+            for (int b=0; b<8; b++) histogram[b * 256 + (int) (key >>> (b * 8) & 0xFF)]++;
+        }
+
+        for (int b=0; b<8; b++) {
+            int offset = b * 256, shift = b * 8;
+            if (histogram[offset + (int) (keys[0] >>> shift & 0xFF)] == size) continue; // every key shares this byte
+
+            for (int i=0, sum=0; i<256; i++) {
+                int count = histogram[offset + i];
+                histogram[offset + i] = sum;
+                sum += count;
+            }
+            for (int i=0; i<size; i++) {
+                int target = histogram[offset + (int) (keys[i] >>> shift & 0xFF)]++;
+                keysScratch[target] = keys[i];
+                valuesScratch[target] = values[i];
+            }
+
+            long[] k = keys; keys = keysScratch; keysScratch = k;
+            int[] v = values; values = valuesScratch; valuesScratch = v;
+        }
+    }
+}
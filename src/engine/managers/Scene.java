@@ -1,14 +1,29 @@
 package engine.managers;
 
+import engine.utils.BoundingBoxTree;
+import engine.utils.Broadphase;
 import engine.utils.Camera;
 import engine.utils.Entity;
+import engine.utils.SlotMap;
+import engine.utils.Sphere;
+import engine.utils.TriangleTree;
 import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
+import org.joml.Intersectionf;
+import org.joml.Matrix4f;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 @SuppressWarnings("unused")
 public final class Scene {
@@ -25,95 +40,292 @@ public final class Scene {
     }
 
     // -----------------------------------------------------------------------------------------------------------------
-    private int lastID = 1;
+    private final SlotMap<Entity> entities = new SlotMap<>();
+    private final List<Entity> objects = entities.view();
+    private final TypeIndex types = new TypeIndex();
+    private final Set<Entity> cancelled = Collections.newSetFromMap(new IdentityHashMap<>());
     private final List<Entity>
-            objects = new ArrayList<>(),
             toCreate = new ArrayList<>(),
             toDestroy = new ArrayList<>(),
             temp = new ArrayList<>();
     @Getter private final Camera camera = new Camera();
+    private final BoundingBoxTree<Entity> spatialIndex = new BoundingBoxTree<>();
+    @Getter private final Broadphase broadphase = new Broadphase();
+    @Getter private final RenderQueue renderQueue = new RenderQueue(), spatialQueue = new RenderQueue();
+    private final Vector3f boundsMin = new Vector3f(), boundsMax = new Vector3f(), pickMin = new Vector3f(), pickMax = new Vector3f();
+    private final Vector2f rayRange = new Vector2f();
+    private final List<Entity> picked = new ArrayList<>();
+    private final Matrix4f inverse = new Matrix4f();
+    private final Vector3f localOrigin = new Vector3f(), localDirection = new Vector3f();
+    private Entity nearest = null;
+    private volatile long spatialVersion = 0;
+    private final Jobs.Graph updateJobs = new Jobs.Graph(), staticJobs = new Jobs.Graph();
+    private double step;
+    private final List<CommandBuffer> commandBuffers = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<CommandBuffer> commandBuffer = ThreadLocal.withInitial(() -> {
+        CommandBuffer buffer = new CommandBuffer();
+        commandBuffers.add(buffer);
+        return buffer;
+    });
+    private final List<CommandBuffer.Command> commands = new ArrayList<>();
 
-    private Scene() {}
+    private Scene() {
+        Jobs.Job update = updateJobs.add("entity_update", () -> forEachIssuing(0, e -> e.update(step)));
+        updateJobs.add("animation", () -> forEachIssuing(1, e -> e.updateAnimation(step)), update);
+
+        Jobs.Job physics = staticJobs.add("physics", () -> forEachIssuing(2, e -> e.staticUpdate(step)));
+        staticJobs.add("visibility", () -> Jobs.forEach(objects, Entity::checkVisibility), physics);
+    }
+
+    /** Runs {@code action} on every entity, keying the commands each one issues to it and to {@code pass}. */
+    private void forEachIssuing(int pass, Consumer<Entity> action) {
+        Jobs.forEach(objects, e -> {
+            CommandBuffer buffer = commandBuffer.get();
+            buffer.issue(pass, e.getId());
+            try { action.accept(e); }
+            finally { buffer.clearIssuer(); }
+        });
+    }
 
     public void setActive() {
         activeScene = this;
-        Shader.get().applyUniforms(camera);
     }
 
     public void update(double dt) {
         camera.update(dt);
-        objects.parallelStream().forEach(e -> {
-            e.update(dt);
-            e.updateAnimation(dt);
-        });
+        step = dt;
+        updateJobs.run(objects.size());
 
+        refreshSpatialIndex();
         removeObjects();
         createObjects();
     }
 
     public void staticUpdate(double dt) {
         camera.staticUpdate();
-        objects.parallelStream().forEach(e -> {
-            e.checkVisibility();
-            e.staticUpdate(dt);
-        });
+        broadphase.update();
+        step = dt;
+        staticJobs.run(objects.size());
 
+        refreshSpatialIndex();
         removeObjects();
         createObjects();
     }
 
-    public void renderSpatial() {
+    public void renderSpatial() { renderSpatial(objects); }
+    public void renderSpatial(List<Entity> entities) {
+        if (Headless.isActive()) return;
         Shader.get("spatial_shader").bind();
-        Shader.get().applyUniforms(camera);
-        objects.stream()
-                .filter(Entity::isVisible)
-                .sorted((a, b) -> Double.compare(b.getPosition().z, a.getPosition().z))
-                .forEach(Entity::spatialRender);
+        if (SpatialManager.isNarrow()) {
+            FrameUniforms.update(camera, SpatialManager.getPickProjection());
+            spatialQueue.build(pickCandidates(entities), camera, true);
+        } else {
+            FrameUniforms.update(camera);
+            spatialQueue.build(entities, camera, true);
+        }
+        spatialQueue.submit(true);
+    }
+
+    /**
+     * The entities inside the pick frustum of a narrow spatial pass. The live list is searched through the spatial
+     * index along the pick ray, so the cost follows the entities under the cursor. Other lists, like the snapshots of
+     * a {@link Simulation} thread that may be moving the index, are tested one by one.
+     */
+    private List<Entity> pickCandidates(List<Entity> entities) {
+        picked.clear();
+        if (entities == objects) {
+            Vector3f origin = SpatialManager.getPickOrigin(), direction = SpatialManager.getPickDirection();
+            raycast(origin, direction, camera.getZFar(), (e, distance) -> {
+                if (inPickFrustum(e)) picked.add(e);
+                return Float.MAX_VALUE;
+            });
+        } else for (Entity e: entities) if (inPickFrustum(e)) picked.add(e);
+        return picked;
     }
 
-    public void render() {
-        Shader.get().applyUniforms(camera);
-        objects.stream()
-                .filter(Entity::isVisible)
-                .sorted((a, b) -> Double.compare(b.getPosition().z, a.getPosition().z))
-                .forEach(Entity::render);
+    private boolean inPickFrustum(Entity e) {
+        e.getRenderBounds(pickMin, pickMax);
+        return SpatialManager.getPickFrustum().testAab(pickMin, pickMax);
     }
 
-    public void create(Entity entity) {
-        toCreate.add(entity);
+    public void render() { render(objects); }
+    /** Draws {@code entities}, such as the latest snapshot of the {@link Simulation} thread, instead of the live list. */
+    public void render(List<Entity> entities) {
+        if (Headless.isActive()) return;
+        FrameUniforms.update(camera);
+        renderQueue.build(entities, camera, false);
+        renderQueue.submit(false);
     }
 
-    public void destroy(Entity entity) {
-        toDestroy.add(entity);
+    // --- Commands ----------------------------------------------------------------------------------------------------
+
+    /** Adds {@code entity} to the scene at the next sync point. Safe to call from parallel entity updates. */
+    public void create(Entity entity) { commandBuffer.get().add(CommandBuffer.CREATE, entity); }
+
+    /** Removes {@code entity} from the scene at the next sync point. Safe to call from parallel entity updates. */
+    public void destroy(Entity entity) { commandBuffer.get().add(CommandBuffer.DESTROY, entity); }
+
+    /** Runs {@code edit} on the updating thread at the next sync point, in order with creations and destructions. */
+    public void defer(Runnable edit) { commandBuffer.get().add(CommandBuffer.EDIT, edit); }
+
+    /**
+     * Merges the command buffers of every thread, ordered by job pass, issuing entity and issue order so the result
+     * does not depend on how the entities were spread over the workers. Runs at the sync points of update and
+     * staticUpdate, which nothing may issue commands concurrently with.
+     */
+    private void applyCommands() {
+        for (CommandBuffer buffer: commandBuffers) buffer.drainTo(commands);
+        commandBuffers.removeIf(CommandBuffer::isAbandoned); // drained for the last time
+        if (commands.isEmpty()) return;
+
+        commands.sort(Comparator.comparingLong(CommandBuffer.Command::key));
+        for (CommandBuffer.Command command: commands) switch (command.kind()) {
+            case CommandBuffer.CREATE -> toCreate.add((Entity) command.target());
+            case CommandBuffer.DESTROY -> toDestroy.add((Entity) command.target());
+            default -> ((Runnable) command.target()).run();
+        }
+        commands.clear();
     }
 
-    public List<Entity> getObjects() { return new ArrayList<>(objects); }
+    /**
+     * Read-only live view of the entities of the scene. It only changes at the sync points at the end of
+     * {@link #update} and {@link #staticUpdate}, where destroying an entity moves the last one into its place.
+     */
+    public List<Entity> getObjects() { return objects; }
+
+    /**
+     * Read-only live view of the entities that are instances of {@code type}, a class or an interface, kept up to date
+     * at the same sync points as {@link #getObjects()}. Costs as much as the matching entities to go through.
+     */
+    public <T> List<T> query(Class<T> type) { return types.query(type); }
+
+    /** The entity with {@code id}, as read back by {@link SpatialManager#getId()}, or {@code null} once it was destroyed. */
+    public Entity getById(int id) { return entities.get(id); }
+
+    /**
+     * Stamp of what the spatial pass draws: it changes at the sync point after an entity is created or destroyed, moved,
+     * scaled or rotated, or flipped its visibility. Reading it costs nothing, so skipped passes stay free.
+     */
+    public long getSpatialVersion() { return spatialVersion; }
+
+    List<Entity> objects() { return objects; }
+
+    // --- Spatial Queries ---------------------------------------------------------------------------------------------
+
+    public void queryRadius(Vector3f center, float radius, BoundingBoxTree.Visitor<Entity> visitor) {
+        spatialIndex.queryRadius(center.x, center.y, center.z, radius, visitor);
+    }
+
+    public void queryAabb(Vector3f min, Vector3f max, BoundingBoxTree.Visitor<Entity> visitor) {
+        spatialIndex.queryAabb(min.x, min.y, min.z, max.x, max.y, max.z, visitor);
+    }
+
+    /** Visits every entity whose bounding box is entered by the ray, see {@link BoundingBoxTree#raycast}. */
+    public void raycast(Vector3f origin, Vector3f direction, float maxDistance, BoundingBoxTree.RayVisitor<Entity> visitor) {
+        spatialIndex.raycast(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z, maxDistance, visitor);
+    }
+
+    /**
+     * Casts a ray against the triangles of the models of {@code entities}, each in its own space so position, scale
+     * and rotation are honoured, and returns the nearest entity hit, or {@code null}. The triangle and the distance
+     * along {@code direction} go into {@code hit}. Only entities whose rotated and scaled world box the ray enters
+     * are tested. The live list finds them through the spatial index, nearest boxes clipping the cast. Other lists,
+     * like the snapshots of a {@link Simulation} thread, check the box of each entity as drawn, so both pick alike.
+     * Must be called from the render thread.
+     */
+    public Entity raycastModels(List<Entity> entities, Vector3f origin, Vector3f direction, float maxDistance, TriangleTree.Hit hit) {
+        nearest = null;
+        hit.reset();
+        if (entities == objects) raycast(origin, direction, maxDistance, (e, distance) -> {
+            if (raycastModel(e, origin, direction, maxDistance, hit)) nearest = e;
+            return hit.isHit() ? hit.distance : Float.MAX_VALUE;
+        });
+        else for (Entity e: entities) {
+            e.getRenderBounds(pickMin, pickMax);
+            if (!Intersectionf.intersectRayAab(origin, direction, pickMin, pickMax, rayRange)
+                    || rayRange.x > (hit.isHit() ? hit.distance : maxDistance)) continue;
+            if (raycastModel(e, origin, direction, maxDistance, hit)) nearest = e;
+        }
+        return nearest;
+    }
+
+    private boolean raycastModel(Entity e, Vector3f origin, Vector3f direction, float maxDistance, TriangleTree.Hit hit) {
+        e.getTransform(inverse).invert();
+        inverse.transformPosition(origin, localOrigin);
+        inverse.transformDirection(direction, localDirection); // left unnormalized, so distances stay in world units
+        return e.getRenderModel().getTriangleTree().raycast(localOrigin.x, localOrigin.y, localOrigin.z,
+                localDirection.x, localDirection.y, localDirection.z, maxDistance, hit);
+    }
+
+    private void refreshSpatialIndex() {
+        boolean changed = false;
+        for (Entity e: objects) {
+            changed |= e.refreshSpatialVisibility();
+            if (!e.refreshWorldBounds()) continue;
+            changed = true;
+            e.getWorldMin(boundsMin);
+            e.getWorldMax(boundsMax);
+            spatialIndex.move(e.getSpatialProxy(), boundsMin.x, boundsMin.y, boundsMin.z, boundsMax.x, boundsMax.y, boundsMax.z);
+        }
+        if (changed) spatialVersion++;
+    }
 
     private void removeObjects() {
+        applyCommands();
+        if (toDestroy.isEmpty()) return;
+        Tracing.SceneEvent event = Tracing.scene("removeObjects");
+        int before = objects.size();
         while (!toDestroy.isEmpty()) {
-            toCreate.removeAll(toDestroy);
-            objects.removeAll(toDestroy);
+            cancelled.clear();
+            for (Entity e: toDestroy) if (e.getId() == 0) cancelled.add(e); // still waiting to be created
+            if (!cancelled.isEmpty()) toCreate.removeIf(cancelled::contains);
 
             temp.clear();
             temp.addAll(toDestroy);
             toDestroy.clear();
 
-            temp.forEach(Entity::onDestroy);
+            for (Entity e: temp) {
+                if (entities.get(e.getId()) == e) {
+                    types.remove(e);
+                    entities.remove(e.getId());
+                    e.setID(0);
+                } else if (!cancelled.remove(e)) continue; // destroyed already
+
+                if (spatialIndex.get(e.getSpatialProxy()) == e) spatialIndex.remove(e.getSpatialProxy());
+                e.setSpatialProxy(BoundingBoxTree.NULL);
+                if (e instanceof Sphere sphere) broadphase.remove(sphere);
+                e.onDestroy();
+            }
+            applyCommands();
         }
+        spatialVersion++;
+        Tracing.end(event, before - objects.size(), objects.size());
     }
 
     private void createObjects() {
+        applyCommands();
+        if (toCreate.isEmpty()) return;
+        Tracing.SceneEvent event = Tracing.scene("createObjects");
+        int before = objects.size();
         while (!toCreate.isEmpty()) {
-            objects.addAll(toCreate);
-
             temp.clear();
             temp.addAll(toCreate);
             toCreate.clear();
 
             temp.forEach(e -> {
-                e.setID(lastID++);
+                if (entities.get(e.getId()) == e) return; // created already
+                e.setID(entities.add(e));
+                types.add(e);
+                e.refreshWorldBounds();
+                e.getWorldMin(boundsMin);
+                e.getWorldMax(boundsMax);
+                e.setSpatialProxy(spatialIndex.insert(e, boundsMin.x, boundsMin.y, boundsMin.z, boundsMax.x, boundsMax.y, boundsMax.z));
+                if (e instanceof Sphere sphere) broadphase.add(sphere);
                 e.onCreate();
             });
+            applyCommands();
         }
+        spatialVersion++;
+        Tracing.end(event, objects.size() - before, objects.size());
     }
 }
@@ -1,11 +1,13 @@
 package engine.managers;
 
-import com.glitched.uniforms.UniformMapper;
+import engine.utils.UniformBinder;
 import engine.utils.UniformFunctions;
 import engine.utils.Vector;
 import lombok.Getter;
 import org.joml.Vector4i;
+import org.lwjgl.BufferUtils;
 
+import java.nio.FloatBuffer;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -14,10 +16,14 @@ import static engine.utils.UniformFunctions.*;
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL30.glBindVertexArray;
 import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL32.GL_GEOMETRY_SHADER;
 import static org.lwjgl.opengl.GL43.*;
 
 public final class Shader {
+    /** How often a uniform changes: once per frame through {@link FrameUniforms}, once per program, or per draw. */
+    public enum Frequency { FRAME, MATERIAL, DRAW }
+
     private static final Pattern LAYOUT_PATTERN = Pattern.compile("^\\s*layout \\(location = (\\d+)\\) in (\\S+) (\\w+)(?:\\[(\\d+)])?;(?:.*//\\s*(\\$\\s*[a-zA-Z].*))?", Pattern.MULTILINE);
     private static final Pattern VARIABLE_PATTERN = Pattern.compile("//\\$var\\s+(?:(int|float)?\\s+)?([a-zA-Z]\\w*)\\s+(?:=\\s+(-?\\d+.?\\d*|Settings.[a-zA-Z]\\w*))?");
     private static final Pattern UNIFORM_PATTERN = Pattern.compile("^\\s*uniform (\\w+) (\\w+)\\s*;(?:.*//\\s*(\\$\\s*[a-zA-Z].*))?", Pattern.MULTILINE);
@@ -25,10 +31,15 @@ public final class Shader {
 
     private static final Map<String, Shader> shaders = new HashMap<>();
     private static Shader activeShader = null;
+    private static int shaderCount = 0;
+    private static int uploadsIssued = 0, uploadsSkipped = 0;
+    @Getter private static int frameUploadsIssued = 0, frameUploadsSkipped = 0;
 
     public static Shader get(String file) {
         if (shaders.containsKey(file)) return shaders.get(file);
-        Shader shader = new Shader(file);
+        Tracing.AssetEvent event = Tracing.asset("shader", file);
+        Shader shader = new Shader(file, !Headless.isActive());
+        Tracing.end(event, shader.uniformFunctions.size());
         shaders.put(file, shader);
         return shader;
     }
@@ -37,12 +48,21 @@ public final class Shader {
         return activeShader;
     }
 
+    /** Latches the uniform upload counters of the frame that just finished and starts counting the next one. */
+    public static void endFrame() {
+        frameUploadsIssued = uploadsIssued;
+        frameUploadsSkipped = uploadsSkipped;
+        uploadsIssued = uploadsSkipped = 0;
+    }
+
     public static void cleanup() {
         if (Main.isRunning()) return;
 
         for (Shader shader: shaders.values()) {
             glDeleteProgram(shader.shaderProgram);
             glDeleteVertexArrays(shader.VAO);
+            if (shader.instanceVBO != 0) glDeleteBuffers(shader.instanceVBO);
+            for (InstanceBatch batch: shader.instanceBatches.values()) glDeleteBuffers(batch.vbo);
         }
         shaders.clear();
     }
@@ -50,17 +70,36 @@ public final class Shader {
     // -----------------------------------------------------------------------------------------------------------------
 
     public final String fileName;
+    @Getter private final int sortId = shaderCount++;
     private final int shaderProgram;
     private final Map<String, Integer> uniformLocations = new HashMap<>();
     private final Map<String, Integer> uniformFunctions = new HashMap<>();
+    private final Map<String, Frequency> uniformFrequencies = new HashMap<>();
     private final Map<String, Integer> fields = new HashMap<>();
     private final List<int[]> layouts = new ArrayList<>();
+    private final Map<Integer, String[]> layoutNames = new HashMap<>();
 
     private final int VAO, stride;
     @Getter private int vertexSize;
     private int activeVBO = 0;
 
-    private Shader(String file) {
+    private int instanceVBO = 0, instanceStride = 0;
+    private final Map<Object, InstanceBatch> instanceBatches = new HashMap<>();
+    private InstanceBatch sharedBatch = null, batch = null;
+    private int[][] instancedLayouts = new int[0][];
+    private String[][] instancedNames = new String[0][];
+    private FloatBuffer instanceData = null;
+
+    private final Map<Class<?>, Binding> bindings = new HashMap<>();
+    private Class<?> lastType = null;
+    private float[][] uniformValues = new float[16][];
+    private Binding lastBinding = null;
+
+    /**
+     * With {@code compile} false only the vertex layout is parsed and no GL object is created, which is enough for
+     * {@link Model} to build its vertices. Such a shader cannot draw, and binding it only makes it the active shader.
+     */
+    Shader(String file, boolean compile) {
         String filepath = "shaders/" + (fileName = file) + ".glsl";
         if (!DataManager.resourceExists(filepath)) throw new RuntimeException("Failed to locate shader \"shaders/%s.glsl\".".formatted(file));
 
@@ -73,22 +112,33 @@ public final class Shader {
                 .replaceAll(headerPattern, id + "$1" + id)
                 .split(id);
 
+        if (!compile) {
+            for (int i=1; i<shaderSourceCodes.length-1; i+=2)
+                if (shaderSourceCodes[i].equals("Vertex")) generateVAO(shaderSourceCodes[i+1]);
+            shaderProgram = VAO = stride = 0;
+            return;
+        }
+
         shaderProgram = createProgram();
         glBindVertexArray(VAO = glGenVertexArrays());
 
         int vertexShader = 0, geometryShader = 0, fragmentShader = 0;
         for (int i=1; i<shaderSourceCodes.length-1; i+=2) switch (shaderSourceCodes[i]) {
-            case "Vertex":   vertexShader   = createShader(shaderSourceCodes[i+1], GL_VERTEX_SHADER); break;
-            case "Geometry": geometryShader = createShader(shaderSourceCodes[i+1], GL_GEOMETRY_SHADER); break;
-            case "Fragment": fragmentShader = createShader(shaderSourceCodes[i+1], GL_FRAGMENT_SHADER); break;
+            case "Vertex":   vertexShader   = createShader(FrameUniforms.rewrite(shaderSourceCodes[i+1]), GL_VERTEX_SHADER); break;
+            case "Geometry": geometryShader = createShader(FrameUniforms.rewrite(shaderSourceCodes[i+1]), GL_GEOMETRY_SHADER); break;
+            case "Fragment": fragmentShader = createShader(FrameUniforms.rewrite(shaderSourceCodes[i+1]), GL_FRAGMENT_SHADER); break;
         }
 
         link(vertexShader, geometryShader, fragmentShader);
+        FrameUniforms.bindProgram(shaderProgram);
         stride = setVertexAttributes();
+        setInstanceAttributes();
 
         findUniforms(code);
     }
 
+    boolean isCompiled() { return shaderProgram != 0; }
+
     public int getFieldLocation(String field) {
         if (fields.containsKey(field)) return fields.get(field);
         return -1;
@@ -97,6 +147,7 @@ public final class Shader {
     public int getLayoutOffset(int location) {
         int offset = 0;
         for (int[] layout: layouts) {
+            if (layout[10] == 1) continue;
             if (layout[0] == location) return offset;
             offset += layout[1];
         }
@@ -104,13 +155,9 @@ public final class Shader {
     }
 
     public engine.utils.Vector getInversionVector(int location) {
-        try { return new engine.utils.Vector(
-                layouts.get(location)[6],
-                layouts.get(location)[7],
-                layouts.get(location)[8],
-                layouts.get(location)[9]
-        ); }
-        catch (IndexOutOfBoundsException ignored) { return new Vector(); }
+        for (int[] layout: layouts) if (layout[0] == location)
+            return new engine.utils.Vector(layout[6], layout[7], layout[8], layout[9]);
+        return new Vector();
     }
 
     public int getUniform(String uniform) {
@@ -125,10 +172,29 @@ public final class Shader {
         return getUniform(uniform + "[" + index + "]");
     }
 
+    public Frequency getFrequency(String uniform) { return uniformFrequencies.get(uniform); }
+
+    /**
+     * Registers the uniforms declared in {@code file}. Uniforms of the {@link FrameUniforms} block are left to it,
+     * samplers are bound once to texture units in declaration order, and everything else is set per draw.
+     */
     private void findUniforms(String file) {
         Matcher matcher = UNIFORM_PATTERN.matcher(file);
+        int textureUnit = 0;
 
         while (matcher.find()) {
+            if (FrameUniforms.NAMES.contains(matcher.group(2))) {
+                uniformFrequencies.put(matcher.group(2), Frequency.FRAME);
+                continue;
+            }
+            if (matcher.group(1).startsWith("sampler")) {
+                uniformFrequencies.put(matcher.group(2), Frequency.MATERIAL);
+                int location = glGetUniformLocation(shaderProgram, matcher.group(2));
+                if (location >= 0) glProgramUniform1i(shaderProgram, location, textureUnit++);
+                continue;
+            }
+            uniformFrequencies.put(matcher.group(2), Frequency.DRAW);
+
             int uniformLocation = glGetUniformLocation(shaderProgram, matcher.group(2));
             int uniformFunction = decodeType(matcher.group(1)).w;
 
@@ -150,10 +216,70 @@ public final class Shader {
         }
     }
 
+    Set<String> getUniformNames() { return Collections.unmodifiableSet(uniformFunctions.keySet()); }
+    UniformFunctions getUniformFunction(String uniform) { return UniformFunctions.fromState(uniformFunctions.getOrDefault(uniform, -1)); }
+
+    /** Sets the per-draw uniforms {@code instance} provides. Per-frame values come from {@link FrameUniforms}. */
     public void applyUniforms(Object instance) {
-        for (Map.Entry<String, Integer> entry: uniformFunctions.entrySet()) try {
-            Objects.requireNonNull(UniformFunctions.fromState(entry.getValue())).setUniform(getUniform(entry.getKey()), UniformMapper.get(instance, entry.getKey()));
-        } catch (NullPointerException ignored) {}
+        Binding binding = getBinding(instance.getClass());
+        for (int i=0; i<binding.locations.length; i++)
+            setUniform(binding.locations[i], binding.functions[i], binding.sources[i].get(instance));
+    }
+
+    /** Uploads {@code values} unless the program already holds them, tracked through a copy of its uniform state. */
+    private void setUniform(int location, UniformFunctions function, float[] values) {
+        if (location < 0 || values == null || values.length == 0) return;
+        if (location >= uniformValues.length) uniformValues = Arrays.copyOf(uniformValues, Math.max(location + 1, uniformValues.length * 2));
+
+        int size = function.size();
+        float[] current = uniformValues[location];
+        if (current == null) current = uniformValues[location] = new float[size];
+        else if (matches(current, values, size)) { uploadsSkipped++; return; }
+
+        for (int i=0; i<size; i++) current[i] = i < values.length ? values[i] : 0;
+        function.setUniform(location, values);
+        uploadsIssued++;
+    }
+
+    private static boolean matches(float[] current, float[] values, int size) {
+        for (int i=0; i<size; i++) if (current[i] != (i < values.length ? values[i] : 0)) return false;
+        return true;
+    }
+
+    /**
+     * Uniform locations, upload functions and value sources of every uniform {@code type} provides to this shader,
+     * resolved once per class so drawing doesn't go through names or reflection.
+     */
+    private record Binding(int[] locations, UniformFunctions[] functions, UniformBinder.Source[] sources, UniformBinder.Source[] instanceSources) {}
+
+    private Binding getBinding(Class<?> type) {
+        if (type == lastType) return lastBinding;
+        Binding binding = bindings.get(type);
+        if (binding == null) bindings.put(type, binding = createBinding(type));
+        lastType = type;
+        return lastBinding = binding;
+    }
+
+    private Binding createBinding(Class<?> type) {
+        UniformBinder binder = UniformBinder.of(type);
+        List<Integer> locations = new ArrayList<>();
+        List<UniformFunctions> functions = new ArrayList<>();
+        List<UniformBinder.Source> sources = new ArrayList<>();
+
+        for (Map.Entry<String, Integer> entry: uniformFunctions.entrySet()) {
+            UniformFunctions function = UniformFunctions.fromState(entry.getValue());
+            if (function == null || !binder.provides(entry.getKey())) continue;
+            locations.add(getUniform(entry.getKey()));
+            functions.add(function);
+            sources.add(binder.get(entry.getKey()));
+        }
+
+        return new Binding(
+                locations.stream().mapToInt(i -> i).toArray(),
+                functions.toArray(UniformFunctions[]::new),
+                sources.toArray(UniformBinder.Source[]::new),
+                Arrays.stream(instancedNames).map(binder::get).toArray(UniformBinder.Source[]::new)
+        );
     }
 
     private int createProgram() {
@@ -246,6 +372,7 @@ public final class Shader {
                         .map(s -> s.trim().replaceAll("\\s+", "_"))
                         .filter(s -> !s.isBlank())
                         .map(s -> s.equalsIgnoreCase("normalized") ? "normalized" : s)
+                        .map(s -> s.equalsIgnoreCase("instanced") ? "instanced" : s)
                         .map(s -> {
                             Matcher invertedMatcher = INVERTED_PATTERN.matcher(s);
                             if (invertedMatcher.find()) {
@@ -265,15 +392,19 @@ public final class Shader {
             } catch (NullPointerException ignored) {arguments = new String[0];}
 
             fields.put(name, location);
+            List<String> names = new ArrayList<>(List.of(name));
             for (String argument: arguments) {
                 if (argument.equals("normalized")
+                        || argument.equals("instanced")
                         || argument.equals("invertX")
                         || argument.equals("invertY")
                         || argument.equals("invertZ")
                         || argument.equals("invertW")
                 ) continue;
                 fields.put(argument, location);
+                names.add(argument);
             }
+            layoutNames.put(location, names.toArray(String[]::new));
 
             Vector4i info = decodeType(type);
             layouts.add(new int[]{
@@ -284,9 +415,10 @@ public final class Shader {
                     Arrays.asList(arguments).contains("invertX") ? 1 : 0,
                     Arrays.asList(arguments).contains("invertY") ? 1 : 0,
                     Arrays.asList(arguments).contains("invertZ") ? 1 : 0,
-                    Arrays.asList(arguments).contains("invertW") ? 1 : 0
+                    Arrays.asList(arguments).contains("invertW") ? 1 : 0,
+                    Arrays.asList(arguments).contains("instanced") ? 1 : 0
             });
-            vertexSize += info.x;
+            if (!Arrays.asList(arguments).contains("instanced")) vertexSize += info.x;
         }
         layouts.sort(Comparator.comparingInt(a -> a[0]));
     }
@@ -334,6 +466,7 @@ public final class Shader {
     private int setVertexAttributes() {
         int offset = 0;
         for (int[] layout: layouts) {
+            if (layout[10] == 1) continue;
             switch (layout[3]) {
                 case GL_INT:
                     glVertexAttribIFormat(layout[0], layout[1], GL_INT, offset);
@@ -348,12 +481,124 @@ public final class Shader {
         return offset;
     }
 
+    /** Per-instance attributes are read from binding 1, advancing once per instance. Matrices take a location per column. */
+    private void setInstanceAttributes() {
+        List<int[]> instanced = layouts.stream().filter(layout -> layout[10] == 1).toList();
+        if (instanced.isEmpty()) return;
+
+        int offset = 0;
+        for (int[] layout: instanced) {
+            int columns = attributeSlots(layout), rows = layout[1] / columns;
+            for (int c=0; c<columns; c++) {
+                if (layout[3] == GL_INT) glVertexAttribIFormat(layout[0] + c, rows, GL_INT, offset);
+                else glVertexAttribFormat(layout[0] + c, rows, GL_FLOAT, layout[5] == 1, offset);
+                glVertexAttribBinding(layout[0] + c, 1);
+                offset += rows * layout[2];
+            }
+        }
+        glVertexBindingDivisor(1, 1);
+
+        instanceStride = offset;
+        instancedLayouts = instanced.toArray(int[][]::new);
+        instancedNames = instanced.stream().map(layout -> layoutNames.get(layout[0])).toArray(String[][]::new);
+        instanceVBO = glGenBuffers();
+        instanceData = BufferUtils.createFloatBuffer(64 * instanceStride / Float.BYTES);
+    }
+
+    public boolean isInstanced() { return instanceVBO != 0; }
+
+    public void beginInstances() { beginInstances(null); }
+
+    /**
+     * Starts gathering instances for the batch identified by {@code key}. Keyed batches keep their own buffer, which
+     * is left untouched on upload while the same instances arrive in the same order with the same versions.
+     */
+    public void beginInstances(Object key) {
+        if (!isInstanced()) return;
+        if (key == null) {
+            if (sharedBatch == null) (sharedBatch = new InstanceBatch()).vbo = instanceVBO;
+            batch = sharedBatch;
+        } else batch = instanceBatches.computeIfAbsent(key, k -> new InstanceBatch());
+        batch.count = 0;
+        batch.changed = key == null;
+    }
+
+    /** Appends {@code instance}, whose per-instance attributes are read from its {@code @Uniform} methods. */
+    public void addInstance(Object instance) { addInstance(instance, -1); }
+
+    /** Appends {@code instance}, stamped with a non-negative {@code version} that changes whenever its attributes do. */
+    public void addInstance(Object instance, long version) {
+        if (!isInstanced()) return;
+        InstanceBatch batch = this.batch;
+        if (batch.count == batch.instances.length) {
+            batch.instances = Arrays.copyOf(batch.instances, batch.count * 2);
+            batch.versions = Arrays.copyOf(batch.versions, batch.count * 2);
+        }
+        int i = batch.count++;
+        if (version < 0 || batch.instances[i] != instance || batch.versions[i] != version) {
+            batch.instances[i] = instance;
+            batch.versions[i] = version;
+            batch.changed = true;
+        }
+    }
+
+    /** Streams the instances gathered since {@link #beginInstances()}, unless unchanged, and returns how many there are. */
+    public int uploadInstances() {
+        if (!isInstanced()) return 0;
+        InstanceBatch batch = this.batch;
+        if (batch.vbo == 0) batch.vbo = glGenBuffers();
+
+        if (batch.changed || batch.count != batch.uploaded) {
+            instanceData.clear();
+            for (int i=0; i<batch.count; i++) writeInstance(batch.instances[i]);
+            instanceData.flip();
+            glBindBuffer(GL_ARRAY_BUFFER, batch.vbo);
+            glBufferData(GL_ARRAY_BUFFER, instanceData, GL_STREAM_DRAW);
+
+            if (batch.uploaded > batch.count) Arrays.fill(batch.instances, batch.count, batch.uploaded, null);
+            batch.uploaded = batch.count;
+        }
+        glBindVertexBuffer(1, batch.vbo, 0, instanceStride);
+        return batch.count;
+    }
+
+    private void writeInstance(Object instance) {
+        if (instanceData.remaining() < instanceStride / Float.BYTES) {
+            FloatBuffer buffer = BufferUtils.createFloatBuffer(instanceData.capacity() * 2);
+            instanceData.flip();
+            instanceData = buffer.put(instanceData);
+        }
+
+        UniformBinder.Source[] sources = getBinding(instance.getClass()).instanceSources;
+        for (int i=0; i<instancedLayouts.length; i++) {
+            int[] layout = instancedLayouts[i];
+            float[] values = sources[i] == null ? null : sources[i].get(instance);
+            if (values == null) values = new float[0];
+            for (int j=0; j<layout[1]; j++) {
+                float value = j < values.length ? values[j] : 0;
+                instanceData.put(layout[3] == GL_INT ? Float.intBitsToFloat((int) value) : value);
+            }
+        }
+    }
+
+    private static final class InstanceBatch {
+        private int vbo = 0, count = 0, uploaded = -1;
+        private Object[] instances = new Object[64];
+        private long[] versions = new long[64];
+        private boolean changed = true;
+    }
+
     public void enableAttributes() {
-        for (int[] layout: layouts) glEnableVertexAttribArray(layout[0]);
+        for (int[] layout: layouts) for (int c=0; c<attributeSlots(layout); c++) glEnableVertexAttribArray(layout[0] + c);
     }
 
     public void disableAttributes() {
-        for (int[] layout: layouts) glDisableVertexAttribArray(layout[0]);
+        for (int[] layout: layouts) for (int c=0; c<attributeSlots(layout); c++) glDisableVertexAttribArray(layout[0] + c);
+    }
+
+    private int attributeSlots(int[] layout) {
+        if (layout[10] == 0) return 1;
+        return switch (layout[1]) { case 16 -> 4; case 9 -> 3; default -> 1; };
     }
 
     public void bindVBO(int VBO) {
@@ -377,21 +622,22 @@ public final class Shader {
 
     public void bind() {
         if (activeShader == this) return;
+        activeShader = this;
+        if (!isCompiled()) return;
 
         glUseProgram(shaderProgram);
         glBindVertexArray(VAO);
         enableAttributes();
-        activeShader = this;
-        applyUniforms(Scene.get().getCamera());
     }
 
     public void unbind() {
         if (activeShader != this) return;
+        activeShader = null;
+        if (!isCompiled()) return;
 
         glUseProgram(0);
         disableAttributes();
         glBindVertexArray(0);
-        activeShader = null;
     }
 
     /** @noinspection unused*/
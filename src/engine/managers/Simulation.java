@@ -0,0 +1,163 @@
+package engine.managers;
+
+import engine.utils.Entity;
+import engine.utils.GameLogic;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed-step simulation thread used when {@code threaded_simulation} is set.
+ * <p>Ticks run {@code GameLogic.staticUpdate} and {@code Scene.staticUpdate} at {@code tps} from an accumulator, running
+ * at most {@code max_catch_up_ticks} ticks per wake-up and dropping the rest of the backlog after a stall. After each
+ * tick the {@link Entity.RenderState render state} of every entity, its transform, visibility, transparency, model,
+ * atlas tile and ID, is captured into a snapshot. The render thread draws between the last two snapshots, interpolated
+ * by how far it is into the current tick, so a low tick rate still moves smoothly.</p>
+ * <p>Ticks and the per-frame updates of the render thread both hold {@link #getLock()}, so game code never sees the
+ * scene changing under it. The snapshots are what let drawing run concurrently with the next tick, which is why the
+ * data of an entity's own {@code @Uniform} methods, read while drawing, may only change in {@code update} and not in
+ * {@code staticUpdate}. Ticks must not touch GL, so models created during {@code staticUpdate} have to be loaded
+ * beforehand.</p>
+ */
+@SuppressWarnings("unused")
+public final class Simulation {
+    @Getter private static final Object lock = new Object();
+    private static final Object snapshotLock = new Object();
+
+    private static Thread thread = null;
+    private static volatile boolean running = false;
+    @Getter private static volatile long ticks = 0;
+
+    private static Snapshot previous = new Snapshot(), current = new Snapshot(), spare = new Snapshot();
+    private static final List<Entity> visible = new ArrayList<>();
+    private static final List<Entity> visibleView = Collections.unmodifiableList(visible);
+    private static final Entity.RenderState blended = new Entity.RenderState();
+    private static long spatialVersion = 0;
+
+    private Simulation() {}
+
+    public static boolean isRunning() { return running; }
+
+    /** {@link Scene#getSpatialVersion() Spatial version} of what the latest {@link #interpolate()} pinned. */
+    public static long getSpatialVersion() { return spatialVersion; }
+
+    public static void start(GameLogic game) {
+        if (running) return;
+        double step = 1d / DataManager.getSetting("tps");
+        int maxCatchUp = Math.max(1, (int) DataManager.getSetting("max_catch_up_ticks"));
+
+        synchronized (lock) { capture(spare); }
+        publish();
+        running = true;
+        thread = new Thread(() -> run(game, step, maxCatchUp), "Simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static void stop() {
+        if (!running) return;
+        running = false;
+        LockSupport.unpark(thread);
+        try { thread.join(); }
+        catch (InterruptedException ignored) { Thread.currentThread().interrupt(); }
+        thread = null;
+    }
+
+    private static void run(GameLogic game, double step, int maxCatchUp) {
+        long stepNanos = (long) (step * 1_000_000_000L), last = System.nanoTime(), accumulator = 0;
+
+        while (running) {
+            long now = System.nanoTime();
+            accumulator += now - last;
+            last = now;
+
+            int steps = 0;
+            while (accumulator >= stepNanos && steps++ < maxCatchUp) {
+                synchronized (lock) {
+                    Main.update(game, step);
+                    capture(spare);
+                }
+                publish();
+                accumulator -= stepNanos;
+                ticks++;
+            }
+            if (accumulator >= stepNanos) accumulator %= stepNanos; // behind by more than the cap: skip ahead
+
+            LockSupport.parkNanos(stepNanos - accumulator);
+        }
+    }
+
+    private static void capture(Snapshot snapshot) {
+        List<Entity> objects = Scene.get().objects();
+        snapshot.spatialVersion = Scene.get().getSpatialVersion();
+        snapshot.resize(objects.size());
+        for (int i=0; i<snapshot.size; i++) {
+            Entity e = objects.get(i);
+            snapshot.entities[i] = e;
+            e.captureRenderState(snapshot.states[i]);
+        }
+    }
+
+    private static void publish() {
+        synchronized (snapshotLock) {
+            Snapshot old = previous;
+            previous = current;
+            current = spare;
+            spare = old;
+            current.time = System.nanoTime();
+        }
+    }
+
+    /**
+     * Pins every entity of the latest tick to its render state, with the transform interpolated from the tick before,
+     * and returns those entities. The list is owned by the render thread and stays valid until the next call.
+     */
+    public static List<Entity> interpolate() {
+        double step = 1d / DataManager.getSetting("tps");
+        visible.clear();
+        synchronized (snapshotLock) {
+            float alpha = (float) Math.min(1, (System.nanoTime() - current.time) / (step * 1_000_000_000L));
+            spatialVersion = previous.spatialVersion == current.spatialVersion
+                    ? current.spatialVersion
+                    : current.spatialVersion * 31 + Float.floatToIntBits(alpha); // moving until alpha reaches 1
+            for (int i=0; i<current.size; i++) {
+                Entity e = current.entities[i];
+                boolean tracked = i < previous.size && previous.entities[i] == e;
+                if (tracked) blended.interpolate(previous.states[i], current.states[i], alpha);
+                else blended.set(current.states[i]);
+                e.setRenderState(blended);
+                visible.add(e);
+            }
+        }
+        return visibleView;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private static final class Snapshot {
+        private Entity[] entities = new Entity[64];
+        private Entity.RenderState[] states = grow(new Entity.RenderState[0], 64);
+        private int size = 0;
+        private long time = 0, spatialVersion = 0;
+
+        private void resize(int size) {
+            if (size > entities.length) {
+                int capacity = Math.max(size, entities.length * 2);
+                entities = new Entity[capacity];
+                states = grow(states, capacity);
+            } else if (size < this.size) Arrays.fill(entities, size, this.size, null);
+            this.size = size;
+        }
+
+        private static Entity.RenderState[] grow(Entity.RenderState[] states, int capacity) {
+            int from = states.length;
+            states = Arrays.copyOf(states, capacity);
+            for (int i=from; i<capacity; i++) states[i] = new Entity.RenderState();
+            return states;
+        }
+    }
+}
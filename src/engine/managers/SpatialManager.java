@@ -1,48 +1,279 @@
 package engine.managers;
 
+import engine.utils.Camera;
+import engine.utils.Entity;
 import engine.utils.Logic;
+import engine.utils.TriangleTree;
 import lombok.Getter;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3d;
+import org.joml.Vector3f;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
-import static org.lwjgl.BufferUtils.createByteBuffer;
-import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL32.*;
 
+/**
+ * ID pass used for picking.
+ * <p>Entities draw their ID into a {@code GL_R32UI} target. The pixel under the cursor, or the centre of the screen in
+ * first person, is copied into one of {@link #BUFFERS} pixel buffers each pass and only mapped once its fence
+ * signalled, so {@link #getId()} trails the pass by a frame or two instead of stalling the pipeline on every read.</p>
+ * <p>With {@code spatial_pick_size} set, a pass only draws the pixels around the cursor: the projection is narrowed to
+ * that square with a pick matrix, the scene only submits the entities inside the matching pick frustum, and they are
+ * drawn into a {@code spatial_pick_size} square corner of the target. Passes that feed a box selection still draw the
+ * whole screen.</p>
+ * <p>With {@code spatial_raycast} set, no pass is drawn at all: the ray through the pixel is cast against the triangles
+ * of every model on the CPU through {@link #raycast(List)}, which gives the ID at once along with the exact point and
+ * triangle hit.</p>
+ * <p>With {@code spatial_skip_unchanged} set, a pass is only drawn when the camera, the scene version or, for passes
+ * that depend on it, the cursor changed since the last one. Otherwise the target still holds the right IDs and
+ * {@link #reuse()} only reads it again.</p>
+ */
 public final class SpatialManager {
-    private static int fbo, color;
+    private static final int BUFFERS = 3;
+    @Getter private static final boolean raycast = DataManager.getFlag("spatial_raycast");
+    private static final boolean skipUnchanged = DataManager.getFlag("spatial_skip_unchanged");
+    private static final int pickSize = DataManager.getSetting("spatial_pick_size") < 1 ? 0 : (int) DataManager.getSetting("spatial_pick_size") | 1;
+
+    private static int fbo, color, depth;
     private static int width, height;
     private static boolean initialized = false;
     @Getter private static boolean paused = false;
-    private static final ByteBuffer buffer = createByteBuffer(3);
     @Getter private static int id = 0;
 
+    private static final int[] pixelBuffers = new int[BUFFERS];
+    private static final long[] fences = new long[BUFFERS];
+    private static final int[] clearValue = {0};
+    private static long issued = 0, collected = 0;
+
+    private record Region(int x, int y, int width, int height, Consumer<Set<Integer>> callback) {}
+    private static final ArrayDeque<Region> regions = new ArrayDeque<>();
+    private static Region region = null;
+    private static int regionBuffer;
+    private static long regionFence = 0;
+
+    @Getter private static boolean narrow = false;
+    private static int pickX, pickY;
+    private static final int[] viewport = new int[4];
+    private static final Matrix4f pickMatrix = new Matrix4f(), pickViewProjection = new Matrix4f();
+    @Getter private static final float[] pickProjection = new float[16];
+    @Getter private static final FrustumIntersection pickFrustum = new FrustumIntersection();
+    @Getter private static final Vector3f pickOrigin = new Vector3f(), pickDirection = new Vector3f();
+
+    private static final TriangleTree.Hit hit = new TriangleTree.Hit();
+    @Getter private static Entity hitEntity = null;
+    @Getter private static int hitTriangle = -1;
+    private static final Vector3f hitPoint = new Vector3f();
+
+    private static final float[] lastView = new float[16], lastProjection = new float[16];
+    private static long lastVersion;
+    private static double lastCursorX, lastCursorY;
+    private static boolean lastNarrow, drawn = false;
+    @Getter private static long passes = 0, skippedPasses = 0;
+
     public static void initialize() {
         if (initialized) return;
         initialized = true;
 
         fbo = glGenFramebuffers();
+        glGenBuffers(pixelBuffers);
+        for (int buffer: pixelBuffers) {
+            glBindBuffer(GL_PIXEL_PACK_BUFFER, buffer);
+            glBufferData(GL_PIXEL_PACK_BUFFER, Integer.BYTES, GL_STREAM_READ);
+        }
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, regionBuffer = glGenBuffers());
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
 
         setup("Error instantiating Spatial Manager's FrameBuffer.");
     }
 
+    /**
+     * Finds the pixel to pick for this pass and whether the pass can be narrowed to it. When it can, sets up the pick
+     * projection, the pick frustum and the ray through the pixel for the scene to cull with.
+     */
+    public static void beginPass(Camera camera) {
+        if (camera.isFirstPersonMode()) {
+            pickX = width / 2;
+            pickY = height / 2;
+        } else {
+            pickX = toTextureX(InputManager.getXPosition());
+            pickY = toTextureY(InputManager.getYPosition());
+        }
+
+        Vector3d position = camera.getPosition(), direction = camera.isFirstPersonMode() ? camera.getFront() : InputManager.getMouseRay();
+        pickOrigin.set(position);
+        pickDirection.set(direction);
+
+        narrow = !raycast && pickSize > 0 && (region != null || regions.isEmpty());
+        if (!narrow) return;
+
+        viewport[2] = width;
+        viewport[3] = height;
+        pickMatrix.identity().pick(pickX + 0.5f, pickY + 0.5f, pickSize, pickSize, viewport)
+                .mul(pickViewProjection.set(camera.getProjectionMatrix()))
+                .get(pickProjection);
+        pickFrustum.set(pickViewProjection.set(pickProjection).mul(pickMatrix.set(camera.getViewMatrix())));
+    }
+
+    /**
+     * Whether this pass has to be drawn, given the {@link Scene#getSpatialVersion() scene version} of what it draws. It
+     * can be skipped when the last pass drew the same camera, version and kind of pass, and, for narrow or ray-cast
+     * passes, the same cursor position. Call after {@link #beginPass}.
+     */
+    public static boolean needsPass(Camera camera, long version) {
+        float[] view = camera.getViewMatrix(), projection = camera.getProjectionMatrix();
+        double cursorX = InputManager.getXPosition(), cursorY = InputManager.getYPosition();
+        boolean followsCursor = (narrow || raycast) && !camera.isFirstPersonMode();
+
+        if (skipUnchanged && drawn && version == lastVersion && narrow == lastNarrow
+                && (!followsCursor || cursorX == lastCursorX && cursorY == lastCursorY)
+                && Arrays.equals(view, lastView) && Arrays.equals(projection, lastProjection)) {
+            skippedPasses++;
+            return false;
+        }
+
+        System.arraycopy(view, 0, lastView, 0, 16);
+        System.arraycopy(projection, 0, lastProjection, 0, 16);
+        lastVersion = version;
+        lastCursorX = cursorX;
+        lastCursorY = cursorY;
+        lastNarrow = narrow;
+        drawn = true;
+        passes++;
+        return true;
+    }
+
+    /** Stands in for a skipped pass, reading the ID again from the target the last pass drew. */
+    public static void reuse() {
+        if (raycast) return;
+        bind();
+        searchID();
+        unbind();
+    }
+
+    /** Clears the bound ID target to 0, which no entity uses. A narrow pass only clears the square it draws into. */
+    public static void clear() {
+        if (narrow) {
+            glEnable(GL_SCISSOR_TEST);
+            glScissor(0, 0, pickSize, pickSize);
+        }
+        glClearBufferuiv(GL_COLOR, 0, clearValue);
+        glClear(GL_DEPTH_BUFFER_BIT);
+        if (narrow) glDisable(GL_SCISSOR_TEST);
+    }
+
+    /** Starts reading the ID under the cursor and takes the result of every earlier read that finished. */
     public static void searchID() {
+        if (Headless.isActive()) return;
         glPixelStorei(GL_PACK_ALIGNMENT, 1);
 
-        int x, y;
-        if (Scene.get().getCamera().isFirstPersonMode()) {
-            x = width / 2;
-            y = height / 2;
-        } else {
-            x = (int) Logic.remapClamped(0, Window.getWidth()-1, 0, width-1, InputManager.getXPosition());
-            y = (int) Logic.remapClamped(0, Window.getHeight()-1, height-1, 0, InputManager.getYPosition());
+        while (collected < issued && collect((int) (collected % BUFFERS), 0)) collected++;
+
+        if (issued - collected < BUFFERS) { // all buffers in flight: skip this read rather than wait for the GPU
+            int slot = (int) (issued++ % BUFFERS);
+            glBindBuffer(GL_PIXEL_PACK_BUFFER, pixelBuffers[slot]);
+            if (narrow) glReadPixels(pickSize / 2, pickSize / 2, 1, 1, GL_RED_INTEGER, GL_UNSIGNED_INT, 0);
+            else glReadPixels(pickX, pickY, 1, 1, GL_RED_INTEGER, GL_UNSIGNED_INT, 0);
+            fences[slot] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        }
+
+        if (region != null) collectRegion();
+        if (region == null && !regions.isEmpty() && !narrow) readRegion(regions.poll());
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+    }
+
+    private static boolean collect(int slot, long timeout) {
+        int status = glClientWaitSync(fences[slot], GL_SYNC_FLUSH_COMMANDS_BIT, timeout);
+        if (status == GL_TIMEOUT_EXPIRED) return false;
+        glDeleteSync(fences[slot]);
+        fences[slot] = 0;
+        if (status == GL_WAIT_FAILED) return true;
+
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, pixelBuffers[slot]);
+        ByteBuffer pixel = glMapBufferRange(GL_PIXEL_PACK_BUFFER, 0, Integer.BYTES, GL_MAP_READ_BIT);
+        if (pixel != null) {
+            id = pixel.order(ByteOrder.nativeOrder()).getInt(0);
+            glUnmapBuffer(GL_PIXEL_PACK_BUFFER);
+        }
+        return true;
+    }
+
+    // --- Ray Casting -------------------------------------------------------------------------------------------------
+
+    /** Picks the entity nearest along the ray of the last {@link #beginPass}, among {@code entities}, on the CPU. */
+    public static void raycast(List<Entity> entities) {
+        Scene scene = Scene.get();
+        hitEntity = scene.raycastModels(entities, pickOrigin, pickDirection, scene.getCamera().getZFar(), hit);
+        id = hitEntity == null ? 0 : hitEntity.getId();
+        hitTriangle = hit.triangle;
+        if (hitEntity != null) hitPoint.set(pickDirection).mul(hit.distance).add(pickOrigin);
+    }
+
+    /** Where the ray cast by {@link #raycast(List)} hit {@link #getHitEntity()}, unchanged while nothing was hit. */
+    public static Vector3f getHitPoint(Vector3f dest) { return dest.set(hitPoint); }
+
+    // --- Box Selection -----------------------------------------------------------------------------------------------
+
+    /**
+     * Collects the unique IDs drawn inside the rectangle between two window positions, such as the cursor at the start
+     * and end of a drag, and hands them to {@code callback} on the render thread once the read finished, a few passes
+     * later. Requests are read one at a time in order.
+     * @throws IllegalStateException with {@code spatial_raycast} set, since no ID pass is drawn to read them from
+     */
+    public static void selectRegion(double x0, double y0, double x1, double y1, Consumer<Set<Integer>> callback) {
+        if (raycast) throw new IllegalStateException("Region selection reads the ID pass, which spatial_raycast turns off.");
+        int ax = toTextureX(x0), ay = toTextureY(y0), bx = toTextureX(x1), by = toTextureY(y1);
+        regions.add(new Region(Math.min(ax, bx), Math.min(ay, by), Math.abs(ax - bx) + 1, Math.abs(ay - by) + 1, callback));
+    }
+
+    private static void readRegion(Region request) {
+        region = request;
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, regionBuffer);
+        glBufferData(GL_PIXEL_PACK_BUFFER, (long) request.width * request.height * Integer.BYTES, GL_STREAM_READ);
+        glReadPixels(request.x, request.y, request.width, request.height, GL_RED_INTEGER, GL_UNSIGNED_INT, 0);
+        regionFence = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+    }
+
+    private static void collectRegion() {
+        int status = glClientWaitSync(regionFence, GL_SYNC_FLUSH_COMMANDS_BIT, 0);
+        if (status == GL_TIMEOUT_EXPIRED) return;
+        glDeleteSync(regionFence);
+        regionFence = 0;
+
+        Set<Integer> ids = new HashSet<>();
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, regionBuffer);
+        ByteBuffer pixels = status == GL_WAIT_FAILED ? null : glMapBuffer(GL_PIXEL_PACK_BUFFER, GL_READ_ONLY);
+        if (pixels != null) {
+            pixels.order(ByteOrder.nativeOrder());
+            for (int i=0; i<region.width * region.height; i++) {
+                int value = pixels.getInt(i * Integer.BYTES);
+                if (value != 0) ids.add(value);
+            }
+            glUnmapBuffer(GL_PIXEL_PACK_BUFFER);
         }
 
-        glReadPixels(x, y, 1, 1, GL_RGB, GL_UNSIGNED_BYTE, buffer);
-        id = buffer.get(0) << 16 | buffer.get(1) << 8 | buffer.get(2);
+        Region done = region;
+        region = null;
+        done.callback.accept(ids);
     }
 
+    private static int toTextureX(double x) { return (int) Logic.remapClamped(0, Window.getWidth()-1, 0, width-1, x); }
+    private static int toTextureY(double y) { return (int) Logic.remapClamped(0, Window.getHeight()-1, height-1, 0, y); }
+
+    // -----------------------------------------------------------------------------------------------------------------
+
     public static void resize() {
+        drawn = false;
         glDeleteTextures(color);
+        glDeleteRenderbuffers(depth);
         setup("Error on Spatial Manager's FrameBuffer after Window Resize.");
     }
 
@@ -56,6 +287,10 @@ public final class SpatialManager {
         bind();
         createTexture();
         glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, color, 0);
+        glBindRenderbuffer(GL_RENDERBUFFER, depth = glGenRenderbuffers());
+        glRenderbufferStorage(GL_RENDERBUFFER, GL_DEPTH_COMPONENT24, width, height);
+        glBindRenderbuffer(GL_RENDERBUFFER, 0);
+        glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_RENDERBUFFER, depth);
         if (glCheckFramebufferStatus(GL_FRAMEBUFFER) != GL_FRAMEBUFFER_COMPLETE)
             throw new RuntimeException(errorMessage);
         unbind();
@@ -63,21 +298,29 @@ public final class SpatialManager {
 
     private static void createTexture() {
         glBindTexture(GL_TEXTURE_2D, color = glGenTextures());
-        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGB, width, height, 0, GL_RGB, GL_UNSIGNED_BYTE, (ByteBuffer) null);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_R32UI, width, height, 0, GL_RED_INTEGER, GL_UNSIGNED_INT, (ByteBuffer) null);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
         glBindTexture(GL_TEXTURE_2D, 0);
     }
 
     public static void cleanup() {
         if (!initialized || Main.isRunning()) return;
         initialized = false;
+        for (int i=0; i<BUFFERS; i++) if (fences[i] != 0) glDeleteSync(fences[i]);
+        if (regionFence != 0) glDeleteSync(regionFence);
+        glDeleteBuffers(pixelBuffers);
+        glDeleteBuffers(regionBuffer);
         glDeleteTextures(color);
+        glDeleteRenderbuffers(depth);
         glDeleteFramebuffers(fbo);
     }
 
     public static void bind() { glBindFramebuffer(GL_FRAMEBUFFER, fbo); }
-    public static void unbind() { glBindFramebuffer(GL_FRAMEBUFFER, 0); }
+    public static void unbind() { glBindFramebuffer(GL_FRAMEBUFFER, Offscreen.getFramebuffer()); }
 
-    public static void setViewport() { glViewport(0, 0, width, height); }
+    public static void setViewport() {
+        if (narrow) glViewport(0, 0, pickSize, pickSize);
+        else glViewport(0, 0, width, height);
+    }
 }
@@ -24,15 +24,18 @@ import static org.lwjgl.opengl.GL30.glGenerateMipmap;
 public class TextureAtlas {
     private static final List<String> loadedTextures = new ArrayList<>();
     private static final Map<String, Vector4f> imageMapping = new HashMap<>();
+    private static final Vector4f fullBounds = new Vector4f(0, 0, 1, 1);
     private static boolean initialized = false;
     private static int id;
     private static BufferedImage atlasImage;
     @Getter private static float textureWidth = 0, textureHeight = 0;
+    @Getter private static int revision = 0;
 
     public static void initialize() {
         if (initialized) return;
         initialized = true;
 
+        Tracing.AssetEvent event = Tracing.asset("texture_atlas", "textures");
         try {
             List<BufferedImage> images = getTextures();
             List<Vector4i> points = texturePacking(images);
@@ -41,6 +44,8 @@ public class TextureAtlas {
             generateTexture(points.getFirst(), buffer);
             bind();
 
+            Tracing.end(event, loadedTextures.size());
+
             if (DataManager.getFlag("show_initialization_messages"))
                 System.out.println("Successfully Initialized Texture Atlas.");
         } catch (IOException e) {
@@ -49,11 +54,11 @@ public class TextureAtlas {
     }
 
     public static Vector4f getBounds(String texture) {
-        if (texture == null || !imageMapping.containsKey(texture)) return new Vector4f(0, 0, 1, 1);
+        if (texture == null || !imageMapping.containsKey(texture)) return fullBounds.set(0, 0, 1, 1);
         return imageMapping.get(texture);
     }
 
-    private static List<BufferedImage> getTextures() throws IOException {
+    static List<BufferedImage> getTextures() throws IOException {
         List<BufferedImage> images = new ArrayList<>();
         for (File file: DataManager.getAllDirectoryResourceFiles("textures")) {
             BufferedImage image = ImageIO.read(file);
@@ -66,7 +71,7 @@ public class TextureAtlas {
         return images;
     }
 
-    private static List<Vector4i> texturePacking(List<BufferedImage> images) {
+    static List<Vector4i> texturePacking(List<BufferedImage> images) {
         List<Vector4i> positions = new ArrayList<>();
         int buffer = Math.max(0, (int) DataManager.getSetting("texture_atlas_buffer_size"));
 
@@ -83,7 +88,7 @@ public class TextureAtlas {
         return positions;
     }
 
-    private static void generateAtlas(List<Vector4i> points, List<BufferedImage> images) {
+    static void generateAtlas(List<Vector4i> points, List<BufferedImage> images) {
         int w = points.getFirst().x, h = points.getFirst().y;
         atlasImage = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
         Graphics g = atlasImage.getGraphics();
@@ -107,6 +112,7 @@ public class TextureAtlas {
             }
         }
         g.dispose();
+        revision++;
     }
 
     private static ByteBuffer generateBuffer(Vector4i dimensions) {
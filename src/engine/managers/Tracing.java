@@ -0,0 +1,198 @@
+package engine.managers;
+
+import jdk.jfr.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Engine spans, emitted as JFR events and optionally collected into a Chrome trace.
+ * <p>Phases of the main loop, scene object changes and asset loads each begin a JFR event that is committed with
+ * entity and draw counts when it ends. While no recording enables the event and {@code chrome_trace} is off, the
+ * event is never committed and the JIT removes it, so the spans cost nothing. With {@code chrome_trace} set, every
+ * span is also kept in memory and written as trace-event JSON to {@code traces/} on exit, ready for
+ * {@code chrome://tracing} or Perfetto.</p>
+ */
+@SuppressWarnings("unused")
+public final class Tracing {
+    private static final boolean chromeTrace = DataManager.getFlag("chrome_trace");
+    private static final int MAX_SPANS = 1 << 20;
+    private static final long origin = System.nanoTime();
+
+    private static String[] names = new String[0], categories = new String[0], threads = new String[0];
+    private static long[] spans = new long[0]; // start, duration, first count, second count
+    private static int spanCount = 0;
+
+    private Tracing() {}
+
+    // --- Events ------------------------------------------------------------------------------------------------------
+
+    @Name("engine.Phase")
+    @Label("Engine Phase")
+    @Category("Components Engine")
+    @Description("A phase of the main loop")
+    public static final class PhaseEvent extends Event {
+        @Label("Phase") String phase;
+        @Label("Entities") int entities;
+        @Label("Draws") int draws;
+        transient long start;
+    }
+
+    @Name("engine.SceneObjects")
+    @Label("Scene Objects")
+    @Category("Components Engine")
+    @Description("Entities created or removed by a scene")
+    public static final class SceneEvent extends Event {
+        @Label("Operation") String operation;
+        @Label("Changed") int changed;
+        @Label("Entities") int entities;
+        transient long start;
+    }
+
+    @Name("engine.AssetLoad")
+    @Label("Asset Load")
+    @Category("Components Engine")
+    @Description("A model, shader or texture atlas being loaded")
+    public static final class AssetEvent extends Event {
+        @Label("Type") String type;
+        @Label("Name") String name;
+        @Label("Size") int size;
+        transient long start;
+    }
+
+    // --- Spans -------------------------------------------------------------------------------------------------------
+
+    public static PhaseEvent phase(String phase) {
+        PhaseEvent event = new PhaseEvent();
+        event.phase = phase;
+        event.start = chromeTrace ? System.nanoTime() : 0;
+        event.begin();
+        return event;
+    }
+
+    public static void end(PhaseEvent event, int entities, int draws) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.entities = entities;
+            event.draws = draws;
+            event.commit();
+        }
+        if (chromeTrace) add(event.phase, "phase", event.start, entities, draws);
+    }
+
+    public static SceneEvent scene(String operation) {
+        SceneEvent event = new SceneEvent();
+        event.operation = operation;
+        event.start = chromeTrace ? System.nanoTime() : 0;
+        event.begin();
+        return event;
+    }
+
+    public static void end(SceneEvent event, int changed, int entities) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.changed = changed;
+            event.entities = entities;
+            event.commit();
+        }
+        if (chromeTrace) add(event.operation, "scene", event.start, changed, entities);
+    }
+
+    public static AssetEvent asset(String type, String name) {
+        AssetEvent event = new AssetEvent();
+        event.type = type;
+        event.name = name;
+        event.start = chromeTrace ? System.nanoTime() : 0;
+        event.begin();
+        return event;
+    }
+
+    public static void end(AssetEvent event, int size) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.size = size;
+            event.commit();
+        }
+        if (chromeTrace) add(event.type + " " + event.name, "asset", event.start, size, 0);
+    }
+
+    // --- Chrome Trace ------------------------------------------------------------------------------------------------
+
+    private static synchronized void add(String name, String category, long start, long first, long second) {
+        if (spanCount == MAX_SPANS) return;
+        if (spanCount == names.length) {
+            int capacity = Math.max(1024, spanCount * 2);
+            names = Arrays.copyOf(names, capacity);
+            categories = Arrays.copyOf(categories, capacity);
+            threads = Arrays.copyOf(threads, capacity);
+            spans = Arrays.copyOf(spans, capacity * 4);
+        }
+        names[spanCount] = name;
+        categories[spanCount] = category;
+        threads[spanCount] = Thread.currentThread().getName();
+        int o = spanCount++ * 4;
+        spans[o] = start - origin;
+        spans[o+1] = System.nanoTime() - start;
+        spans[o+2] = first;
+        spans[o+3] = second;
+    }
+
+    /** Writes the collected spans as Chrome trace-event JSON. Does nothing unless {@code chrome_trace} is set. */
+    public static synchronized void export() {
+        if (!chromeTrace || spanCount == 0) return;
+        try {
+            Files.createDirectories(Path.of("traces"));
+            Path file = Path.of("traces", LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss")) + ".json");
+            try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+                writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+                for (int i=0; i<spanCount; i++) {
+                    int o = i * 4;
+                    if (i > 0) writer.write(",\n");
+                    writer.write(String.format(Locale.ROOT, "{\"name\":\"%s\",\"cat\":\"%s\",\"ph\":\"X\",\"pid\":1,\"tid\":\"%s\",\"ts\":%.3f,\"dur\":%.3f,\"args\":%s}",
+                            escape(names[i]), escape(categories[i]), escape(threads[i]), spans[o] / 1e3, spans[o+1] / 1e3, arguments(categories[i], spans[o+2], spans[o+3])
+                    ));
+                }
+                writer.write("\n]}\n");
+            }
+            spanCount = 0;
+        } catch (IOException e) {
+            System.err.println("Failed to write trace: " + e.getMessage());
+        }
+    }
+
+    /** Escapes quotes, backslashes and control characters, which asset paths and thread names may contain. */
+    private static String escape(String text) {
+        StringBuilder builder = null;
+        for (int i=0; i<text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '"' && c != '\\' && c >= 0x20) {
+                if (builder != null) builder.append(c);
+                continue;
+            }
+            if (builder == null) builder = new StringBuilder(text.length() + 8).append(text, 0, i);
+            switch (c) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '\t' -> builder.append("\\t");
+                default -> builder.append("\\u%04x".formatted((int) c));
+            }
+        }
+        return builder == null ? text : builder.toString();
+    }
+
+    private static String arguments(String category, long first, long second) {
+        return switch (category) {
+            case "phase" -> "{\"entities\":%d,\"draws\":%d}".formatted(first, second);
+            case "scene" -> "{\"changed\":%d,\"entities\":%d}".formatted(first, second);
+            default -> "{\"size\":%d}".formatted(first);
+        };
+    }
+}
@@ -0,0 +1,82 @@
+package engine.managers;
+
+import engine.utils.Entity;
+import engine.utils.SlotMap;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Entities of a scene partitioned by every class and interface they are an instance of.
+ * <p>Each type keeps a dense array of its entities, and each entity remembers its position in it by the slot of its ID,
+ * so adding and removing are O(1) per type in its hierarchy. {@link #query(Class)} hands out the partition itself as a
+ * read-only list, so filtering by type costs nothing beyond visiting the matching entities.</p>
+ */
+final class TypeIndex {
+    private final Map<Class<?>, Partition> partitions = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Partition[]> hierarchies = new HashMap<>();
+
+    /** Read-only live list of the entities that are instances of {@code type}, changing only at scene sync points. */
+    @SuppressWarnings("unchecked")
+    <T> List<T> query(Class<T> type) { return (List<T>) partitions.computeIfAbsent(type, key -> new Partition()); }
+
+    /** Adds an entity that was just given its ID. */
+    void add(Entity e) {
+        int slot = SlotMap.indexOf(e.getId());
+        for (Partition partition: hierarchy(e.getClass())) partition.insert(e, slot);
+    }
+
+    /** Removes an entity before its ID is cleared. */
+    void remove(Entity e) {
+        int slot = SlotMap.indexOf(e.getId());
+        for (Partition partition: hierarchy(e.getClass())) partition.delete(slot);
+    }
+
+    private Partition[] hierarchy(Class<?> type) {
+        Partition[] hierarchy = hierarchies.get(type);
+        if (hierarchy != null) return hierarchy;
+
+        Set<Class<?>> types = new LinkedHashSet<>();
+        ArrayDeque<Class<?>> pending = new ArrayDeque<>(List.of(type));
+        while (!pending.isEmpty()) {
+            Class<?> t = pending.poll();
+            if (!types.add(t)) continue;
+            if (t.getSuperclass() != null && t.getSuperclass() != Object.class) pending.add(t.getSuperclass());
+            pending.addAll(List.of(t.getInterfaces()));
+        }
+        hierarchy = types.stream().map(t -> partitions.computeIfAbsent(t, key -> new Partition())).toArray(Partition[]::new);
+        hierarchies.put(type, hierarchy);
+        return hierarchy;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private static final class Partition extends AbstractList<Entity> implements RandomAccess {
+        private Entity[] entities = new Entity[16];
+        private int[] positions = new int[16]; // by slot
+        private int size = 0;
+
+        private void insert(Entity e, int slot) {
+            if (size == entities.length) entities = Arrays.copyOf(entities, size * 2);
+            if (slot >= positions.length) positions = Arrays.copyOf(positions, Math.max(slot + 1, positions.length * 2));
+            entities[size] = e;
+            positions[slot] = size++;
+        }
+
+        private void delete(int slot) {
+            int index = positions[slot];
+            Entity last = entities[--size];
+            entities[index] = last;
+            positions[SlotMap.indexOf(last.getId())] = index;
+            entities[size] = null;
+        }
+
+        @Override
+        public Entity get(int index) {
+            if (index >= size) throw new IndexOutOfBoundsException(index);
+            return entities[index];
+        }
+
+        @Override public int size() { return size; }
+    }
+}
@@ -19,6 +19,8 @@ public final class Window {
     private static long id;
     @Getter private static int width = 1280, height = 720;
     @Getter private static String title = "Window";
+    @Getter private static volatile boolean focused = true, iconified = false;
+    private static final boolean idleWhenUnfocused = DataManager.getFlag("idle_when_unfocused");
 
     private Window() {}
 
@@ -27,17 +29,23 @@ public final class Window {
         if (initialized) return;
         initialized = true;
 
+        boolean offscreen = Offscreen.isEnabled();
+        if (offscreen) {
+            width = Offscreen.getWidth();
+            height = Offscreen.getHeight();
+        }
+
         glfwDefaultWindowHints();
         glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
-        glfwWindowHint(GLFW_RESIZABLE, GLFW_TRUE);
-        if (DataManager.getFlag("anti_aliasing_samples")) glfwWindowHint(GLFW_SAMPLES, (int) DataManager.getSetting("anti_aliasing_samples"));
+        glfwWindowHint(GLFW_RESIZABLE, offscreen ? GLFW_FALSE : GLFW_TRUE);
+        if (!offscreen && DataManager.getFlag("anti_aliasing_samples")) glfwWindowHint(GLFW_SAMPLES, (int) DataManager.getSetting("anti_aliasing_samples"));
         //noinspection AssignmentUsedAsCondition
-        glfwWindowHint(GLFW_DOUBLEBUFFER, (vSync = DataManager.getFlag("vSync")) ? GLFW_TRUE : GLFW_FALSE);
+        glfwWindowHint(GLFW_DOUBLEBUFFER, (vSync = !offscreen && DataManager.getFlag("vSync")) ? GLFW_TRUE : GLFW_FALSE);
 
         GLFWVidMode mode = glfwGetVideoMode(glfwGetPrimaryMonitor());
         assert mode != null;
 
-        if ((id = glfwCreateWindow(width, height, "Title", 0, 0)) == 0)
+        if ((id = glfwCreateWindow(offscreen ? 1 : width, offscreen ? 1 : height, "Title", 0, 0)) == 0)
             throw new RuntimeException("Failed to initialize the GLFW Window.");
         glfwSetWindowPos(id, (mode.width() - width) / 2, (mode.height() - height) / 2);
         setTitle(title);
@@ -52,7 +60,7 @@ public final class Window {
         glfwSetMouseButtonCallback(id, (_, button, action, mods) ->
                 InputManager.registerMouseInput(new Vector3i(button, action, mods)));
 
-        glfwSetFramebufferSizeCallback(id, (_, width, height) -> {
+        if (!offscreen) glfwSetFramebufferSizeCallback(id, (_, width, height) -> {
             Window.width = width;
             Window.height = height;
             setViewport();
@@ -62,18 +70,33 @@ public final class Window {
         glfwSetCursorPosCallback(id, (_, xPosition, yPosition) ->
                 InputManager.registerCursorPosition(new Vector2d(xPosition, yPosition)));
 
+        if (!offscreen) {
+            glfwSetWindowFocusCallback(id, (_, focused) -> Window.focused = focused);
+            glfwSetWindowIconifyCallback(id, (_, iconified) -> Window.iconified = iconified);
+        }
+
         glfwMakeContextCurrent(id);
         if (vSync) glfwSwapInterval(DataManager.getFlag("uncapped_FPS") ? 0 : 1);
         lockCursor(DataManager.getFlag("first_person_mode"));
-        glfwShowWindow(id);
+        if (!offscreen) glfwShowWindow(id);
 
         createCapabilities();
+        Offscreen.initialize();
     }
 
-    public static void lockCursor(boolean lock) {glfwSetInputMode(id, GLFW_CURSOR, lock ? GLFW_CURSOR_DISABLED : GLFW_CURSOR_NORMAL);}
+    public static void lockCursor(boolean lock) {if (id != 0) glfwSetInputMode(id, GLFW_CURSOR, lock ? GLFW_CURSOR_DISABLED : GLFW_CURSOR_NORMAL);}
 
     public static void setViewport() { glViewport(0, 0, width, height); }
-    public static void setTitle(String title) { glfwSetWindowTitle(id, Window.title = title); }
+    public static void setTitle(String title) { if (id != 0) glfwSetWindowTitle(id, Window.title = title); else Window.title = title; }
+
+    /**
+     * Whether nobody is looking at the window: it is iconified, zero-sized or, with {@code idle_when_unfocused}, not
+     * focused. The main loop drops to {@code idle_fps} meanwhile. Offscreen windows are never idle.
+     */
+    public static boolean isIdle() {
+        if (Offscreen.isEnabled()) return false;
+        return iconified || width == 0 || height == 0 || idleWhenUnfocused && !focused;
+    }
 
     public static float getAspectRatio() { return width / (float) height; }
 
@@ -94,7 +117,7 @@ public final class Window {
     @Contract(" -> new")
     public static @NotNull Vector2i getSize() {int[][] s = new int[2][1]; glfwGetWindowSize(id, s[0], s[1]); return new Vector2i(s[0][0], s[1][0]);}
 
-    public static boolean shouldNotClose() { return !glfwWindowShouldClose(id); }
+    public static boolean shouldNotClose() { return !glfwWindowShouldClose(id) && !Offscreen.isFinished(); }
     public static void swapBuffers() { glfwSwapBuffers(id); }
     public static void focus() { glfwFocusWindow(id); }
     public static void show() { glfwShowWindow(id); }
@@ -104,7 +127,8 @@ public final class Window {
     public static void requestAttention() { glfwRequestWindowAttention(id); }
 
     public static void frameUpdate() {
-        if (vSync) glfwSwapBuffers(id);
+        if (Offscreen.isEnabled()) Offscreen.present();
+        else if (vSync) glfwSwapBuffers(id);
         else glFlush();
     }
 
@@ -112,6 +136,7 @@ public final class Window {
         if (!initialized || Main.isRunning()) return;
         initialized = false;
 
+        Offscreen.cleanup();
         glfwFreeCallbacks(id);
         glfwDestroyWindow(id);
     }
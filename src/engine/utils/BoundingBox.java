@@ -29,10 +29,15 @@ public final class BoundingBox {
     public BoundingBox setBounds(Number min, Number max) { return setMin(min).setMax(max); }
 
     public Vector3f getMin() { return link == null ? min : link.getPosition().add(min); }
+    public Vector3f getMin(Vector3f dest) { return link == null ? dest.set(min) : dest.set(link.position).add(min); }
+    /** The minimum corner relative to the linked entity, as in model space. */
+    public Vector3f getLocalMin(Vector3f dest) { return dest.set(min); }
     public BoundingBox setMin(Number value) { return setMin(value, value, value); }
     public BoundingBox setMin(Number x, Number y, Number z) { min.set(x.floatValue(), y.floatValue(), z.floatValue()); return this; }
 
     public Vector3f getMax() { return link == null ? max : link.getPosition().add(max); }
+    public Vector3f getMax(Vector3f dest) { return link == null ? dest.set(max) : dest.set(link.position).add(max); }
+    public Vector3f getLocalMax(Vector3f dest) { return dest.set(max); }
     public BoundingBox setMax(Number value) { return setMax(value, value, value); }
     public BoundingBox setMax(Number x, Number y, Number z) { max.set(x.floatValue(), y.floatValue(), z.floatValue()); return this; }
 
@@ -0,0 +1,347 @@
+package engine.utils;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Dynamic bounding volume hierarchy over axis-aligned boxes.
+ * <p>Leaves store a fattened copy of each item's bounds, so small movements don't touch the tree. Internal nodes are
+ * kept height-balanced through rotations on insertion and removal. Queries walk the tree with a per-thread stack and
+ * report hits through a callback, so they can run concurrently (as long as nothing is moving) without allocating.</p>
+ */
+@SuppressWarnings({"unchecked", "unused", "UnusedReturnValue"})
+public final class BoundingBoxTree<T> {
+    public static final int NULL = -1;
+
+    @FunctionalInterface public interface Visitor<T> { boolean visit(T item); }
+    @FunctionalInterface public interface RayVisitor<T> { float visit(T item, float distance); }
+
+    private static final ThreadLocal<Stack> stacks = ThreadLocal.withInitial(Stack::new);
+    private static final class Stack {
+        private int[] data = new int[64];
+        private int size = 0;
+
+        private void push(int node) { if (size == data.length) data = Arrays.copyOf(data, size * 2); data[size++] = node; }
+        private int pop() { return data[--size]; }
+    }
+
+    private final float margin;
+    private float[] bounds;
+    private int[] parent, left, right, height;
+    private Object[] items;
+    private int capacity, freeList = NULL, root = NULL;
+    @Getter private int size = 0;
+
+    public BoundingBoxTree() { this(0.1f); }
+    public BoundingBoxTree(float margin) {
+        this.margin = Math.max(margin, 0);
+        allocate(16);
+    }
+
+    private void allocate(int newCapacity) {
+        int previous = capacity;
+        bounds = bounds == null ? new float[newCapacity * 6] : Arrays.copyOf(bounds, newCapacity * 6);
+        parent = parent == null ? new int[newCapacity] : Arrays.copyOf(parent, newCapacity);
+        left   = left   == null ? new int[newCapacity] : Arrays.copyOf(left, newCapacity);
+        right  = right  == null ? new int[newCapacity] : Arrays.copyOf(right, newCapacity);
+        height = height == null ? new int[newCapacity] : Arrays.copyOf(height, newCapacity);
+        items  = items  == null ? new Object[newCapacity] : Arrays.copyOf(items, newCapacity);
+        capacity = newCapacity;
+
+        for (int i=capacity-1; i>=previous; i--) {
+            parent[i] = freeList;
+            height[i] = -1;
+            freeList = i;
+        }
+    }
+
+    private int allocateNode() {
+        if (freeList == NULL) allocate(capacity * 2);
+        int node = freeList;
+        freeList = parent[node];
+        parent[node] = left[node] = right[node] = NULL;
+        height[node] = 0;
+        items[node] = null;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        parent[node] = freeList;
+        height[node] = -1;
+        items[node] = null;
+        freeList = node;
+    }
+
+    // --- Mutation ----------------------------------------------------------------------------------------------------
+
+    public int insert(T item, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int proxy = allocateNode();
+        setFattened(proxy, minX, minY, minZ, maxX, maxY, maxZ);
+        items[proxy] = item;
+        insertLeaf(proxy);
+        size++;
+        return proxy;
+    }
+
+    public void remove(int proxy) {
+        if (!isLeaf(proxy)) return;
+        removeLeaf(proxy);
+        freeNode(proxy);
+        size--;
+    }
+
+    /** @return Whether the proxy had to be re-inserted, i.e. the new bounds escaped its fattened box. */
+    public boolean move(int proxy, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        if (!isLeaf(proxy)) return false;
+        int o = proxy * 6;
+        if (bounds[o] <= minX && bounds[o+1] <= minY && bounds[o+2] <= minZ
+                && bounds[o+3] >= maxX && bounds[o+4] >= maxY && bounds[o+5] >= maxZ) return false;
+
+        removeLeaf(proxy);
+        setFattened(proxy, minX, minY, minZ, maxX, maxY, maxZ);
+        insertLeaf(proxy);
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(items, null);
+        capacity = 0;
+        freeList = root = NULL;
+        size = 0;
+        allocate(bounds.length / 6);
+    }
+
+    public T get(int proxy) { return isLeaf(proxy) ? (T) items[proxy] : null; }
+
+    private boolean isLeaf(int proxy) { return proxy >= 0 && proxy < capacity && height[proxy] == 0 && items[proxy] != null; }
+
+    private void setFattened(int node, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int o = node * 6;
+        bounds[o]   = minX - margin;
+        bounds[o+1] = minY - margin;
+        bounds[o+2] = minZ - margin;
+        bounds[o+3] = maxX + margin;
+        bounds[o+4] = maxY + margin;
+        bounds[o+5] = maxZ + margin;
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL) {
+            root = leaf;
+            parent[leaf] = NULL;
+            return;
+        }
+
+        // Walk down towards the sibling that grows the total surface area the least
+        int index = root;
+        while (left[index] != NULL) {
+            int childA = left[index], childB = right[index];
+            float area = area(index);
+            float combinedArea = combinedArea(index, leaf);
+            float cost = 2 * combinedArea;
+            float inheritance = 2 * (combinedArea - area);
+
+            float costA = combinedArea(childA, leaf) + inheritance;
+            if (left[childA] != NULL) costA -= area(childA);
+            float costB = combinedArea(childB, leaf) + inheritance;
+            if (left[childB] != NULL) costB -= area(childB);
+
+            if (cost < costA && cost < costB) break;
+            index = costA < costB ? childA : childB;
+        }
+
+        int sibling = index;
+        int oldParent = parent[sibling];
+        int newParent = allocateNode();
+        parent[newParent] = oldParent;
+        combine(newParent, sibling, leaf);
+        height[newParent] = height[sibling] + 1;
+
+        if (oldParent != NULL) {
+            if (left[oldParent] == sibling) left[oldParent] = newParent;
+            else right[oldParent] = newParent;
+        } else root = newParent;
+        left[newParent] = sibling;
+        right[newParent] = leaf;
+        parent[sibling] = parent[leaf] = newParent;
+
+        refit(parent[leaf]);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL;
+            return;
+        }
+
+        int parentNode = parent[leaf];
+        int grandParent = parent[parentNode];
+        int sibling = left[parentNode] == leaf ? right[parentNode] : left[parentNode];
+
+        if (grandParent != NULL) {
+            if (left[grandParent] == parentNode) left[grandParent] = sibling;
+            else right[grandParent] = sibling;
+            parent[sibling] = grandParent;
+            freeNode(parentNode);
+            refit(grandParent);
+        } else {
+            root = sibling;
+            parent[sibling] = NULL;
+            freeNode(parentNode);
+        }
+        parent[leaf] = NULL;
+    }
+
+    private void refit(int index) {
+        while (index != NULL) {
+            index = balance(index);
+            int a = left[index], b = right[index];
+            height[index] = 1 + Math.max(height[a], height[b]);
+            combine(index, a, b);
+            index = parent[index];
+        }
+    }
+
+    /** Rotates an unbalanced subtree rooted at {@code a} and returns its new root. */
+    private int balance(int a) {
+        if (left[a] == NULL || height[a] < 2) return a;
+
+        int b = left[a], c = right[a];
+        int difference = height[c] - height[b];
+        if (difference > 1) return rotate(a, c, b, false);
+        if (difference < -1) return rotate(a, b, c, true);
+        return a;
+    }
+
+    private int rotate(int a, int up, int other, boolean upIsLeft) {
+        int f = left[up], g = right[up];
+
+        // Promote "up" into a's place
+        left[up] = a;
+        parent[up] = parent[a];
+        parent[a] = up;
+        if (parent[up] != NULL) {
+            if (left[parent[up]] == a) left[parent[up]] = up;
+            else right[parent[up]] = up;
+        } else root = up;
+
+        int keep = height[f] > height[g] ? f : g, give = keep == f ? g : f;
+        right[up] = keep;
+        if (upIsLeft) left[a] = give; else right[a] = give;
+        parent[give] = a;
+
+        combine(a, other, give);
+        combine(up, a, keep);
+        height[a] = 1 + Math.max(height[other], height[give]);
+        height[up] = 1 + Math.max(height[a], height[keep]);
+        return up;
+    }
+
+    private void combine(int target, int a, int b) {
+        int t = target * 6, oa = a * 6, ob = b * 6;
+        for (int i=0; i<3; i++) {
+            bounds[t+i]   = Math.min(bounds[oa+i], bounds[ob+i]);
+            bounds[t+i+3] = Math.max(bounds[oa+i+3], bounds[ob+i+3]);
+        }
+    }
+
+    private float area(int node) {
+        int o = node * 6;
+        float x = bounds[o+3] - bounds[o], y = bounds[o+4] - bounds[o+1], z = bounds[o+5] - bounds[o+2];
+        return x * y + y * z + z * x;
+    }
+
+    private float combinedArea(int a, int b) {
+        int oa = a * 6, ob = b * 6;
+        float x = Math.max(bounds[oa+3], bounds[ob+3]) - Math.min(bounds[oa], bounds[ob]);
+        float y = Math.max(bounds[oa+4], bounds[ob+4]) - Math.min(bounds[oa+1], bounds[ob+1]);
+        float z = Math.max(bounds[oa+5], bounds[ob+5]) - Math.min(bounds[oa+2], bounds[ob+2]);
+        return x * y + y * z + z * x;
+    }
+
+    // --- Queries -----------------------------------------------------------------------------------------------------
+
+    public void queryAabb(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, Visitor<T> visitor) {
+        if (root == NULL) return;
+        Stack stack = stacks.get();
+        int base = stack.size;
+        stack.push(root);
+        while (stack.size > base) {
+            int node = stack.pop(), o = node * 6;
+            if (bounds[o] > maxX || bounds[o+1] > maxY || bounds[o+2] > maxZ
+                    || bounds[o+3] < minX || bounds[o+4] < minY || bounds[o+5] < minZ) continue;
+
+            if (left[node] == NULL) {
+                if (!visitor.visit((T) items[node])) { stack.size = base; return; }
+            } else {
+                stack.push(left[node]);
+                stack.push(right[node]);
+            }
+        }
+    }
+
+    public void queryRadius(float x, float y, float z, float radius, Visitor<T> visitor) {
+        if (root == NULL) return;
+        float radiusSquared = radius * radius;
+        Stack stack = stacks.get();
+        int base = stack.size;
+        stack.push(root);
+        while (stack.size > base) {
+            int node = stack.pop(), o = node * 6;
+            float dx = Math.max(Math.max(bounds[o] - x, 0), x - bounds[o+3]);
+            float dy = Math.max(Math.max(bounds[o+1] - y, 0), y - bounds[o+4]);
+            float dz = Math.max(Math.max(bounds[o+2] - z, 0), z - bounds[o+5]);
+            if (dx * dx + dy * dy + dz * dz > radiusSquared) continue;
+
+            if (left[node] == NULL) {
+                if (!visitor.visit((T) items[node])) { stack.size = base; return; }
+            } else {
+                stack.push(left[node]);
+                stack.push(right[node]);
+            }
+        }
+    }
+
+    /**
+     * Casts a ray through the tree. The visitor receives each leaf whose box the ray enters before {@code maxDistance}
+     * together with the entry distance, and returns the new maximum distance: a value {@code < 0} stops the cast,
+     * {@code 0..maxDistance} clips it and anything larger leaves it unchanged.
+     */
+    public void raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance, RayVisitor<T> visitor) {
+        if (root == NULL) return;
+        float ix = 1f / dx, iy = 1f / dy, iz = 1f / dz;
+        Stack stack = stacks.get();
+        int base = stack.size;
+        stack.push(root);
+        while (stack.size > base) {
+            int node = stack.pop();
+            float distance = intersect(node, ox, oy, oz, ix, iy, iz, maxDistance);
+            if (distance < 0) continue;
+
+            if (left[node] == NULL) {
+                float result = visitor.visit((T) items[node], distance);
+                if (result < 0) { stack.size = base; return; }
+                if (result < maxDistance) maxDistance = result;
+            } else {
+                stack.push(left[node]);
+                stack.push(right[node]);
+            }
+        }
+    }
+
+    private float intersect(int node, float ox, float oy, float oz, float ix, float iy, float iz, float maxDistance) {
+        int o = node * 6;
+        float t1 = (bounds[o]   - ox) * ix, t2 = (bounds[o+3] - ox) * ix;
+        float tMin = Math.min(t1, t2), tMax = Math.max(t1, t2);
+        t1 = (bounds[o+1] - oy) * iy; t2 = (bounds[o+4] - oy) * iy;
+        tMin = Math.max(tMin, Math.min(t1, t2)); tMax = Math.min(tMax, Math.max(t1, t2));
+        t1 = (bounds[o+2] - oz) * iz; t2 = (bounds[o+5] - oz) * iz;
+        tMin = Math.max(tMin, Math.min(t1, t2)); tMax = Math.min(tMax, Math.max(t1, t2));
+
+        if (!(tMax >= Math.max(tMin, 0)) || tMin > maxDistance) return -1;
+        return Math.max(tMin, 0);
+    }
+
+    public int getHeight() { return root == NULL ? 0 : height[root]; }
+}
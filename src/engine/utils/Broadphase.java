@@ -0,0 +1,194 @@
+package engine.utils;
+
+import java.util.Arrays;
+
+/**
+ * Sweep-and-prune collision stage for {@link Sphere}s.
+ * <p>Spheres are kept sorted by the lower x bound of their box. Since bodies barely move between ticks, an insertion
+ * sort restores that order in close to linear time. The sweep then only compares spheres whose x intervals overlap,
+ * and each contact found is diffed against last tick's pair set to tell which contacts began and which ended.</p>
+ */
+@SuppressWarnings("unused")
+public final class Broadphase {
+    private Sphere[] spheres = new Sphere[64];
+    private float[] bounds = new float[64 * 6];
+    private int count = 0, removed = 0;
+    private PairBuffer current = new PairBuffer(), previous = new PairBuffer();
+
+    public void add(Sphere sphere) {
+        if (sphere.inBroadphase) return;
+        sphere.inBroadphase = true;
+        if (count == spheres.length) {
+            spheres = Arrays.copyOf(spheres, count * 2);
+            bounds = Arrays.copyOf(bounds, count * 12);
+        }
+        spheres[count++] = sphere;
+    }
+
+    public void remove(Sphere sphere) {
+        if (!sphere.inBroadphase) return;
+        sphere.inBroadphase = false;
+        removed++;
+    }
+
+    public int getSphereCount() { return count - removed; }
+    public int getContactCount() { return previous.size; }
+
+    public void update() {
+        compact();
+        computeBounds();
+        sort();
+
+        PairBuffer temp = previous;
+        previous = current;
+        current = temp;
+        current.clear();
+
+        for (int i=0; i<count; i++) spheres[i].clearContacts();
+        sweep();
+
+        for (int i=0; i<current.size; i++) if (!previous.keys.contains(current.keys.get(i))) {
+            current.a[i].beganCollisions.add(current.b[i]);
+            current.b[i].beganCollisions.add(current.a[i]);
+        }
+        for (int i=0; i<previous.size; i++) if (!current.keys.contains(previous.keys.get(i))) {
+            previous.a[i].endedCollisions.add(previous.b[i]);
+            previous.b[i].endedCollisions.add(previous.a[i]);
+        }
+    }
+
+    private void compact() {
+        if (removed == 0) return;
+        int target = 0;
+        for (int i=0; i<count; i++) if (spheres[i].inBroadphase) spheres[target++] = spheres[i];
+        Arrays.fill(spheres, target, count, null);
+        count = target;
+        removed = 0;
+    }
+
+    private void computeBounds() {
+        for (int i=0; i<count; i++) {
+            Sphere s = spheres[i];
+            float r = s.diameter / 2;
+            int o = i * 6;
+            bounds[o]   = s.position.x - r; bounds[o+1] = s.position.x + r;
+            bounds[o+2] = s.position.y - r; bounds[o+3] = s.position.y + r;
+            bounds[o+4] = s.position.z - r; bounds[o+5] = s.position.z + r;
+        }
+    }
+
+    /** Insertion sort on the lower x bound, cheap when the order is nearly unchanged since the last tick. */
+    private void sort() {
+        for (int i=1; i<count; i++) {
+            float key = bounds[i*6];
+            int j = i - 1;
+            if (bounds[j*6] <= key) continue;
+
+            Sphere sphere = spheres[i];
+            float b1 = bounds[i*6+1], b2 = bounds[i*6+2], b3 = bounds[i*6+3], b4 = bounds[i*6+4], b5 = bounds[i*6+5];
+            while (j >= 0 && bounds[j*6] > key) {
+                spheres[j+1] = spheres[j];
+                System.arraycopy(bounds, j*6, bounds, (j+1)*6, 6);
+                j--;
+            }
+            spheres[j+1] = sphere;
+            int o = (j+1) * 6;
+            bounds[o] = key; bounds[o+1] = b1; bounds[o+2] = b2; bounds[o+3] = b3; bounds[o+4] = b4; bounds[o+5] = b5;
+        }
+    }
+
+    private void sweep() {
+        for (int i=0; i<count; i++) {
+            int a = i * 6;
+            Sphere sa = spheres[i];
+            for (int j=i+1; j<count; j++) {
+                int b = j * 6;
+                if (bounds[b] > bounds[a+1]) break;
+                if (bounds[b+2] > bounds[a+3] || bounds[b+3] < bounds[a+2]
+                        || bounds[b+4] > bounds[a+5] || bounds[b+5] < bounds[a+4]) continue;
+
+                Sphere sb = spheres[j];
+                float reach = (sa.diameter + sb.diameter) / 2;
+                if (sa.position.distanceSquared(sb.position) >= reach * reach) continue;
+
+                current.add(sa, sb);
+                sa.collisions.add(sb);
+                sb.collisions.add(sa);
+            }
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private static final class PairBuffer {
+        private Sphere[] a = new Sphere[64], b = new Sphere[64];
+        private int size = 0;
+        private final LongSet keys = new LongSet();
+
+        private void add(Sphere first, Sphere second) {
+            if (size == a.length) {
+                a = Arrays.copyOf(a, size * 2);
+                b = Arrays.copyOf(b, size * 2);
+            }
+            a[size] = first;
+            b[size++] = second;
+            int idA = first.getId(), idB = second.getId();
+            keys.add(Math.min(idA, idB) & 0xFFFFFFFFL | (long) Math.max(idA, idB) << 32);
+        }
+
+        private void clear() {
+            Arrays.fill(a, 0, size, null);
+            Arrays.fill(b, 0, size, null);
+            size = 0;
+            keys.clear();
+        }
+    }
+
+    /** Open-addressing set of non-zero longs, keeping insertion order for iteration. */
+    private static final class LongSet {
+        private long[] table = new long[128], entries = new long[64];
+        private int size = 0;
+
+        private void add(long key) {
+            if ((size + 1) * 2 > table.length) rehash(table.length * 2);
+            if (insert(table, key)) {
+                if (size == entries.length) entries = Arrays.copyOf(entries, size * 2);
+                entries[size++] = key;
+            }
+        }
+
+        private long get(int index) { return entries[index]; }
+
+        private boolean contains(long key) {
+            int mask = table.length - 1;
+            for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                if (table[i] == key) return true;
+                if (table[i] == 0) return false;
+            }
+        }
+
+        private void clear() {
+            if (size == 0) return;
+            Arrays.fill(table, 0);
+            size = 0;
+        }
+
+        private void rehash(int capacity) {
+            table = new long[capacity];
+            for (int i=0; i<size; i++) insert(table, entries[i]);
+        }
+
+        private static boolean insert(long[] table, long key) {
+            int mask = table.length - 1;
+            for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                if (table[i] == key) return false;
+                if (table[i] == 0) { table[i] = key; return true; }
+            }
+        }
+
+        private static int mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.glitched.annotations.Uniform;
 import engine.managers.DataManager;
 import engine.managers.InputManager;
 import engine.managers.Window;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import org.joml.Matrix4f;
@@ -35,6 +36,8 @@ public final class Camera {
             up = new Vector3d(0, 1, 0),
             mask = new Vector3d(1, 0, 1);
     private final Vector4d[] planes = new Vector4d[6];
+    @Getter(AccessLevel.NONE) private final Matrix4f viewMatrix = new Matrix4f(), projectionMatrix = new Matrix4f();
+    @Getter(AccessLevel.NONE) private final float[] viewValues = new float[16], projectionValues = new float[16], timeValues = new float[1];
 
     public Camera() {
         setFirstPersonMode(DataManager.getFlag("first_person_mode"));
@@ -147,15 +150,21 @@ public final class Camera {
 
     @SuppressWarnings("unused")
     @Uniform("view")
-    public float[] getViewMatrix() { return getViewMatrixObject().get(new float[16]); }
+    public float[] getViewMatrix() {
+        return viewMatrix.setLookAt(
+                (float) position.x, (float) position.y, (float) position.z,
+                (float) (position.x + front.x), (float) (position.y + front.y), (float) (position.z + front.z),
+                (float) up.x, (float) up.y, (float) up.z
+        ).get(viewValues);
+    }
     public Matrix4f getViewMatrixObject() { return new Matrix4f().lookAt(new Vector3f(position), new Vector3f(position).add(new Vector3f(front)), new Vector3f(up)); }
 
     @SuppressWarnings("unused")
     @Uniform("projection")
-    public float[] getProjectionMatrix() { return getProjectionMatrixObject().get(new float[16]); }
+    public float[] getProjectionMatrix() { return projectionMatrix.setPerspective((float) toRadians(FOV), Window.getAspectRatio(), ZNear, ZFar).get(projectionValues); }
     public Matrix4f getProjectionMatrixObject() { return new Matrix4f().perspective((float) toRadians(FOV), Window.getAspectRatio(), ZNear, ZFar); }
 
     @Uniform("time")
     @SuppressWarnings("unused")
-    private float[] getTime() { return new float[]{(float) glfwGetTime()}; }
+    private float[] getTime() { timeValues[0] = (float) glfwGetTime(); return timeValues; }
 }
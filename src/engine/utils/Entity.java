@@ -5,10 +5,13 @@ import engine.animation.SpriteAnimation;
 import engine.animation.StateAnimation;
 import engine.managers.*;
 import lombok.Getter;
+import lombok.Setter;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
 
+import java.util.Arrays;
+
 import static org.lwjgl.glfw.GLFW.GLFW_MOUSE_BUTTON_LEFT;
 
 @SuppressWarnings("unused")
@@ -20,17 +23,35 @@ public abstract class Entity {
     private final String modelName;
     protected Model model;
     @Getter private boolean visible = true;
+    private boolean spatialVisible = true;
+    @Getter @Setter private boolean transparent = false;
     protected final BoundingBox boundingBox = new BoundingBox(this);
     @Getter private int id = 0;
+    @Getter @Setter private int spatialProxy = BoundingBoxTree.NULL;
     @Getter protected String texture;
     private int textureRows = 1, textureColumns = 1, textureX = 0, textureY = 0;
     protected final StateAnimation stateAnimation = new StateAnimation(this);
     protected final SpriteAnimation spriteAnimation = new SpriteAnimation(this);
+    private final Matrix4f transformMatrix = new Matrix4f();
+    private final Vector3f uniformScale = new Vector3f(), boundsScratch = new Vector3f();
+    private final Vector3f worldMin = new Vector3f(), worldMax = new Vector3f(), offsetMin = new Vector3f(), offsetMax = new Vector3f();
+    private final Matrix4f boundsMatrix = new Matrix4f();
+    private final float[] boundsSource = new float[9], boundsState = {Float.NaN, 0, 0, 0, 0, 0, 0, 0, 0}; // NaN: not placed yet
+    private final float[] transformValues = new float[16], pickIDValues = new float[1], atlasValues = new float[4];
+    private final float[] transformState = new float[9], liveState = new float[9];
+    private final RenderState drawn = new RenderState();
+    private boolean renderStatePinned = false;
+    private boolean transformDirty = true;
+    private String atlasTexture = null;
+    private final int[] atlasTile = new int[4];
+    private int atlasRevision = -1;
+    private long version = 0;
 
     public Entity(String model) {this(Model.get(model), "");}
     public Entity(String model, Shader shader) {this(Model.get(model, shader), "");}
     public Entity(String model, String shader) {this(Model.get(model, shader), "");}
     public Entity(String model, String shader, String texture) {this(Model.get(model, shader), texture);}
+    public Entity(String model, String shader, String texture, boolean transparent) {this(Model.get(model, shader), texture); this.transparent = transparent;}
     public Entity(Model model) {this(model, "");}
     public Entity(Model model, String texture) {
         this.model = model;
@@ -39,19 +60,19 @@ public abstract class Entity {
         this.texture = texture;
     }
 
-    public void move(Vector offset) { position.add(offset.toVector3f()); }
-    public void move(Vector3f offset) { position.add(offset); }
-    public void move(Number x, Number y, Number z) { position.add(x.floatValue(), y.floatValue(), z.floatValue()); }
-    public void rotate(Vector angle) { rotation.add(angle.toVector3f()); }
-    public void rotate(Vector3f angle) { rotation.add(angle); }
-    public void rotate(Number x, Number y, Number z) { rotation.add(x.floatValue(), y.floatValue(), z.floatValue()); }
+    public void move(Vector offset) { position.add(offset.xf(), offset.yf(), offset.zf()); transformDirty = true; }
+    public void move(Vector3f offset) { position.add(offset); transformDirty = true; }
+    public void move(Number x, Number y, Number z) { position.add(x.floatValue(), y.floatValue(), z.floatValue()); transformDirty = true; }
+    public void rotate(Vector angle) { rotation.add(angle.xf(), angle.yf(), angle.zf()); transformDirty = true; }
+    public void rotate(Vector3f angle) { rotation.add(angle); transformDirty = true; }
+    public void rotate(Number x, Number y, Number z) { rotation.add(x.floatValue(), y.floatValue(), z.floatValue()); transformDirty = true; }
     public void setScale(Number size) { setScale(size, size, size); }
-    public void setScale(Vector size) { scale.set(size.toVector3f()); }
-    public void setScale(Vector3f size) { scale.set(size); }
-    public void setScale(Number x, Number y, Number z) { scale.set(x.floatValue(), y.floatValue(), z.floatValue()); }
-    public void mulScale(Vector size) { scale.mul(size.toVector3f()); }
-    public void mulScale(Vector3f size) { scale.mul(size); }
-    public void mulScale(Number x, Number y, Number z) { scale.mul(x.floatValue(), y.floatValue(), z.floatValue()); }
+    public void setScale(Vector size) { size.toVector3f(scale); transformDirty = true; }
+    public void setScale(Vector3f size) { scale.set(size); transformDirty = true; }
+    public void setScale(Number x, Number y, Number z) { scale.set(x.floatValue(), y.floatValue(), z.floatValue()); transformDirty = true; }
+    public void mulScale(Vector size) { scale.mul(size.xf(), size.yf(), size.zf()); transformDirty = true; }
+    public void mulScale(Vector3f size) { scale.mul(size); transformDirty = true; }
+    public void mulScale(Number x, Number y, Number z) { scale.mul(x.floatValue(), y.floatValue(), z.floatValue()); transformDirty = true; }
 
     public final void checkVisibility() {
         visible = Scene.get().getCamera().isInView(boundingBox.getMin(), boundingBox.getMax());
@@ -62,24 +83,25 @@ public abstract class Entity {
     public void staticUpdate(double dt) { updatePhysics(dt); }
 
     protected void updatePhysics(double dt) {
-        position.add(new Vector3f(speed).mul((float) dt));
+        position.fma((float) dt, speed);
     }
 
-    public final void spatialRender() {
-        Shader shader = model.shader;
-        setShader("spatial_shader");
-        render();
-        setShader(shader);
-    }
-    public void render() {render(model.shader);}
-    public void render(Shader shader) {
-        shader.bind();
+    public final void spatialRender() { render(Shader.get("spatial_shader")); }
+    public void render() { render(getRenderModel()); }
+    public void render(Shader shader) { render(getRenderModel(shader)); }
+    private void render(Model model) {
+        model.shader.bind();
         model.bindVBO();
         Shader.get().applyUniforms(this);
-        model.render();
+        if (model.shader.isInstanced()) {
+            model.shader.beginInstances();
+            model.shader.addInstance(this);
+            model.renderInstanced(model.shader.uploadInstances());
+        } else model.render();
     }
 
     public void setShader(Shader shader) { model = Model.get(modelName, shader); }
+    public Model getModel(Shader shader) { return model.shader == shader ? model : Model.get(modelName, shader); }
     public void setShader(String shader) { model = Model.get(modelName, shader); }
 
     @Override
@@ -91,43 +113,230 @@ public abstract class Entity {
     public void onCreate() {}
 
     public Vector3f getPosition() { return new Vector3f(position); }
+    public Vector3f getPosition(Vector3f dest) { return dest.set(position); }
+    public Vector3f getRenderPosition(Vector3f dest) { return renderStatePinned ? dest.set(drawn.transform[0], drawn.transform[1], drawn.transform[2]) : dest.set(position); }
     public Vector3f getScale() { return new Vector3f(scale); }
+    public Vector3f getScale(Vector3f dest) { return dest.set(scale); }
     public Vector3f getRotation() { return new Vector3f(rotation); }
+    public Vector3f getRotation(Vector3f dest) { return dest.set(rotation); }
+    public BoundingBox getBoundingBox() { return boundingBox; }
+    /** The world matrix the entity is drawn with, including a state pinned by {@link #setRenderState}. */
+    public Matrix4f getTransform(Matrix4f dest) { refreshTransform(); return dest.set(transformValues); }
+    public Model getModel() { return model; }
+
+    // The entity as drawn: its pinned render state if any, else its live state
+    public boolean isRenderVisible() { return renderStatePinned ? drawn.visible : visible; }
+    public boolean isRenderTransparent() { return renderStatePinned ? drawn.transparent : transparent; }
+    public Model getRenderModel() { return renderStatePinned ? drawn.model : model; }
+    public Model getRenderModel(Shader shader) { Model model = getRenderModel(); return model.shader == shader ? model : Model.get(modelName, shader); }
 
-    public void setID(int id) {if (this.id == 0) this.id = id; }
+    /** Set by the scene on creation and cleared on destruction. An entity in a scene keeps its ID. */
+    public void setID(int id) {
+        if (this.id != 0 && id != 0) return;
+        this.id = id;
+    }
 
     public boolean isHighlighted() { return SpatialManager.getId() == getId(); }
     public boolean isClicked() { return isClicked(GLFW_MOUSE_BUTTON_LEFT); }
     public boolean isClicked(int button) { return isHighlighted() && InputManager.isButtonPressed(button); }
 
+    public void setTexture(String texture) { this.texture = texture; }
     public void setTextureRows(int textureRows) { this.textureRows = Math.max(textureRows, 1); }
     public void setTextureColumns(int textureColumns) { this.textureColumns = Math.max(textureColumns, 1); }
-    public void setTextureX(int textureX) { this.textureX = (int) Logic.clamp(textureX, 0, textureColumns-1);}
-    public void setTextureY(int textureY) { this.textureY = (int) Logic.clamp(textureY, 0, textureRows-1);}
+    public void setTextureX(int textureX) { this.textureX = (int) Logic.clamp(textureX, 0, textureColumns-1); }
+    public void setTextureY(int textureY) { this.textureY = (int) Logic.clamp(textureY, 0, textureRows-1); }
+
+    /**
+     * Stamp of the data this entity feeds to shaders, increased whenever its transform, atlas rectangle, id or
+     * {@link #refreshState() own state} changed since the previous call. Renderers keep uploaded data while it holds.
+     */
+    public long getVersion() {
+        refreshTransform();
+        refreshAtlas();
+        refreshPickID();
+        if (refreshState()) version++;
+        return version;
+    }
+
+    /** Copies everything the renderer reads from this entity, besides the data of its own uniforms, into {@code dest}. */
+    public void captureRenderState(RenderState dest) {
+        liveTransform(dest.transform, dest.scratch);
+        dest.visible = visible;
+        dest.transparent = transparent;
+        dest.model = model;
+        dest.id = id;
+        dest.texture = texture;
+        dest.textureRows = textureRows;
+        dest.textureColumns = textureColumns;
+        dest.textureX = textureX;
+        dest.textureY = textureY;
+    }
+
+    /**
+     * Draws the entity from {@code state} instead of its live state until {@link #clearRenderState()}, as used by the
+     * threaded {@link engine.managers.Simulation} to draw between ticks while the next one changes the entity.
+     */
+    public void setRenderState(RenderState state) {
+        drawn.set(state);
+        renderStatePinned = true;
+    }
+
+    public void clearRenderState() { renderStatePinned = false; }
+
+    /** Hook for subclasses feeding extra per-instance data, returning whether that data changed since the last call. */
+    protected boolean refreshState() { return false; }
+
+    /**
+     * Rebuilds the cached world matrix when a setter flagged it or when position, scale or rotation differ from the
+     * values it was built from, since subclasses may write those vectors directly.
+     */
+    private void refreshTransform() {
+        float[] source = transformSource(), state = transformState;
+        boolean dirty = !renderStatePinned && transformDirty; // the flag belongs to the live state
+        if (!dirty && Arrays.equals(source, state)) return;
+
+        System.arraycopy(source, 0, state, 0, state.length);
+        place(state, transformMatrix).get(transformValues);
+        if (!renderStatePinned) transformDirty = false;
+        version++;
+    }
+
+    private float[] transformSource() { return renderStatePinned ? drawn.transform : liveTransform(liveState, uniformScale); }
+
+    /** Writes the live position, scale and rotation into {@code dest}, reading the overridable getters into {@code v}. */
+    private float[] liveTransform(float[] dest, Vector3f v) {
+        dest[0] = position.x; dest[1] = position.y; dest[2] = position.z;
+        getScale(v);
+        dest[3] = v.x; dest[4] = v.y; dest[5] = v.z;
+        getRotation(v);
+        dest[6] = v.x; dest[7] = v.y; dest[8] = v.z;
+        return dest;
+    }
+
+    private static Matrix4f place(float[] state, Matrix4f dest) {
+        return dest.translation(state[0], state[1], state[2])
+                .scale(state[3], state[4], state[5])
+                .rotateX((float) Math.toRadians(state[6]))
+                .rotateY((float) Math.toRadians(state[7]))
+                .rotateZ((float) Math.toRadians(state[8]));
+    }
+
+    // --- World Bounds ------------------------------------------------------------------------------------------------
+
+    /**
+     * Re-derives the world-space box around the model, rotated and scaled, from the live position, scale and rotation,
+     * returning whether those changed since the previous call. The scene calls it at its sync points to place the
+     * entity in its spatial index, so it never touches the caches of the render thread.
+     */
+    public boolean refreshWorldBounds() {
+        float[] source = liveTransform(boundsSource, boundsScratch), state = boundsState;
+        if (Arrays.equals(source, state)) return false;
+
+        if (!Arrays.equals(source, 3, 9, state, 3, 9)) { // scaled or rotated: re-derive the box around the origin
+            place(source, boundsMatrix).setTranslation(0, 0, 0);
+            boundsMatrix.transformAab(boundingBox.getLocalMin(offsetMin), boundingBox.getLocalMax(offsetMax), offsetMin, offsetMax);
+        }
+        System.arraycopy(source, 0, state, 0, state.length);
+        worldMin.set(offsetMin).add(state[0], state[1], state[2]);
+        worldMax.set(offsetMax).add(state[0], state[1], state[2]);
+        return true;
+    }
+
+    /** Returns whether the visibility flipped since the previous call, which the scene makes at its sync points. */
+    public boolean refreshSpatialVisibility() {
+        if (spatialVisible == visible) return false;
+        spatialVisible = visible;
+        return true;
+    }
+
+    /** The world-space box of the latest {@link #refreshWorldBounds()}, as stored in the spatial index. */
+    public Vector3f getWorldMin(Vector3f dest) { return dest.set(worldMin); }
+    public Vector3f getWorldMax(Vector3f dest) { return dest.set(worldMax); }
+
+    /** The world-space box around the model as drawn, from its pinned render state if any. For the render thread. */
+    public void getRenderBounds(Vector3f min, Vector3f max) {
+        refreshTransform();
+        transformMatrix.transformAab(boundingBox.getLocalMin(min), boundingBox.getLocalMax(max), min, max);
+    }
+
+    private void refreshAtlas() {
+        if (renderStatePinned) refreshAtlas(drawn.texture, drawn.textureRows, drawn.textureColumns, drawn.textureX, drawn.textureY);
+        else refreshAtlas(texture, textureRows, textureColumns, textureX, textureY);
+    }
+
+    /** Re-derives the atlas rectangle when the texture or its tile changed or the atlas was rebuilt. */
+    private void refreshAtlas(String texture, int rows, int columns, int x, int y) {
+        int[] tile = atlasTile;
+        if (atlasTexture == texture && tile[0] == rows && tile[1] == columns && tile[2] == x && tile[3] == y
+                && atlasRevision == TextureAtlas.getRevision()) return;
+
+        Vector4f bounds = TextureAtlas.getBounds(texture);
+        float gridW = (bounds.z - bounds.x) / columns;
+        float gridH = (bounds.w - bounds.y) / rows;
+        atlasValues[0] = bounds.x + gridW * x;
+        atlasValues[1] = bounds.y + gridH * y;
+        atlasValues[2] = bounds.x + gridW * (x + 1);
+        atlasValues[3] = bounds.y + gridH * (y + 1);
+        atlasTexture = texture;
+        tile[0] = rows; tile[1] = columns; tile[2] = x; tile[3] = y;
+        atlasRevision = TextureAtlas.getRevision();
+        version++;
+    }
+
+    private void refreshPickID() {
+        int id = renderStatePinned ? drawn.id : this.id;
+        if (pickIDValues[0] == id) return;
+        pickIDValues[0] = id; // exact below 2^24
+        version++;
+    }
 
     @Uniform
     private float[] transform() {
-        return new Matrix4f().identity()
-                .translate(getPosition().x, getPosition().y, getPosition().z)
-                .scale(getScale().x, getScale().y, getScale().z)
-                .rotateX((float) Math.toRadians(getRotation().x))
-                .rotateY((float) Math.toRadians(getRotation().y))
-                .rotateZ((float) Math.toRadians(getRotation().z))
-                .get(new float[16]);
+        refreshTransform();
+        return transformValues;
     }
 
     @Uniform
-    private float[] colorID() {
-        return new Vector((id >> 16) & 0xFF, (id >> 8) & 0xFF, id & 0xFF).div(255).toFloatArray();
+    private float[] pickID() {
+        refreshPickID();
+        return pickIDValues;
     }
 
     @Uniform("AtlasRemapping")
     private float[] atlasRemapping() {
-        Vector4f bounds = TextureAtlas.getBounds(texture);
-        float absGridW = (bounds.z - bounds.x) / textureColumns + bounds.x;
-        float absGridH = (bounds.w - bounds.y) / textureRows + bounds.y;
-        float gridW = absGridW - bounds.x;
-        float gridH = absGridH - bounds.y;
-        return new Vector(bounds.x, bounds.y, absGridW, absGridH).add(gridW * textureX, gridH * textureY, gridW * textureX, gridH * textureY).toFloatArray();
+        refreshAtlas();
+        return atlasValues;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /** What the renderer reads from an entity, as captured by {@link #captureRenderState} and drawn by {@link #setRenderState}. */
+    public static final class RenderState {
+        private final float[] transform = new float[9]; // position, scale, rotation
+        private final Vector3f scratch = new Vector3f(); // for the capturing thread
+        private boolean visible, transparent;
+        private Model model;
+        private int id;
+        private String texture;
+        private int textureRows, textureColumns, textureX, textureY;
+
+        public void set(RenderState state) {
+            System.arraycopy(state.transform, 0, transform, 0, transform.length);
+            visible = state.visible;
+            transparent = state.transparent;
+            model = state.model;
+            id = state.id;
+            texture = state.texture;
+            textureRows = state.textureRows;
+            textureColumns = state.textureColumns;
+            textureX = state.textureX;
+            textureY = state.textureY;
+        }
+
+        /** Sets this to {@code to}, with the transform interpolated from {@code from} by {@code alpha}. */
+        public void interpolate(RenderState from, RenderState to, float alpha) {
+            set(to);
+            for (int i=0; i<transform.length; i++) transform[i] = from.transform[i] + (to.transform[i] - from.transform[i]) * alpha;
+        }
     }
 }
@@ -16,6 +16,7 @@ public abstract class GameLogic {
     protected void create(Entity entity) { Scene.get().create(entity); }
     protected void destroy(Entity entity) { Scene.get().destroy(entity); }
     protected List<Entity> loadedEntities() { return Scene.get().getObjects(); }
+    protected <T> List<T> loadedEntities(Class<T> type) { return Scene.get().query(type); }
 
     protected void setTitle(String title) { Window.setTitle(title); }
 }
@@ -0,0 +1,73 @@
+package engine.utils;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size log-linear histogram of nanosecond durations, laid out like HdrHistogram.
+ * <p>Values are grouped by power of two, and each group is split into 64 linear sub-buckets, which keeps every
+ * reported value within 1/64 of the recorded one from 1 ns up to {@link #HIGHEST} (about 68 s). Recording is a few
+ * shifts and an array increment, and the counts array is allocated once.</p>
+ * <p>Each histogram expects a single writer. Reads from other threads may see a recording in progress.</p>
+ */
+@SuppressWarnings("unused")
+public final class LatencyHistogram {
+    public static final long HIGHEST = (1L << 36) - 1;
+    private static final int SUB_BUCKET_HALF_MAGNITUDE = 6, SUB_BUCKET_HALF = 1 << SUB_BUCKET_HALF_MAGNITUDE;
+    private static final long SUB_BUCKET_MASK = (SUB_BUCKET_HALF << 1) - 1;
+    private static final int LAST_BUCKET = 63 - Long.numberOfLeadingZeros(HIGHEST) - SUB_BUCKET_HALF_MAGNITUDE;
+
+    private final long[] counts = new long[(LAST_BUCKET + 2) << SUB_BUCKET_HALF_MAGNITUDE];
+    @Getter private long count = 0, max = 0, total = 0;
+    private long min = Long.MAX_VALUE;
+
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, HIGHEST));
+        counts[index(value)]++;
+        count++;
+        total += value;
+        if (value > max) max = value;
+        if (value < min) min = value;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = total = max = 0;
+        min = Long.MAX_VALUE;
+    }
+
+    public double getMean() { return count == 0 ? 0 : (double) total / count; }
+    public long getMinimum() { return count == 0 ? 0 : min; }
+
+    /** The value at or below which {@code percentile} percent of recordings fall, within the histogram's precision. */
+    public long getPercentile(double percentile) {
+        if (count == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count)), seen = 0;
+        for (int i=0; i<counts.length; i++) if ((seen += counts[i]) >= target)
+            return Math.min(highestEquivalent(i), max);
+        return max;
+    }
+
+    /** Adds the recordings of {@code other} to this histogram. */
+    public void add(LatencyHistogram other) {
+        for (int i=0; i<counts.length; i++) counts[i] += other.counts[i];
+        count += other.count;
+        total += other.total;
+        max = Math.max(max, other.max);
+        min = Math.min(min, other.min);
+    }
+
+    private static int index(long value) {
+        int bucket = 63 - Long.numberOfLeadingZeros(value | SUB_BUCKET_MASK) - SUB_BUCKET_HALF_MAGNITUDE;
+        int subBucket = (int) (value >>> bucket);
+        return ((bucket + 1) << SUB_BUCKET_HALF_MAGNITUDE) + subBucket - SUB_BUCKET_HALF;
+    }
+
+    private static long highestEquivalent(int index) {
+        int bucket = (index >> SUB_BUCKET_HALF_MAGNITUDE) - 1;
+        long subBucket = (index & (SUB_BUCKET_HALF - 1)) + SUB_BUCKET_HALF;
+        if (bucket < 0) { subBucket -= SUB_BUCKET_HALF; bucket = 0; }
+        return ((subBucket + 1) << bucket) - 1;
+    }
+}
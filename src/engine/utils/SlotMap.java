@@ -0,0 +1,120 @@
+package engine.utils;
+
+import lombok.Getter;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Generational slot map handing out non-zero integer handles for its values.
+ * <p>Values are kept densely packed for iteration and removed by moving the last one into the gap, so adding, removing
+ * and looking up by handle are all O(1). A handle packs the slot of its value into its low {@link #INDEX_BITS} bits and
+ * the slot's generation above them. A slot's generation changes whenever it is freed, so a handle outliving its value
+ * is told apart from the handle of a later value in the same slot. Freed slots are reused oldest first, which makes a
+ * slot go through all {@code 2^GENERATION_BITS} generations as late as possible.</p>
+ * <p>Handles stay below {@code 2^24} so they remain exact as floats, the way entity IDs reach the picking shader.</p>
+ */
+@SuppressWarnings({"unchecked", "unused", "UnusedReturnValue"})
+public final class SlotMap<T> {
+    public static final int INDEX_BITS = 20, GENERATION_BITS = 4;
+    public static final int MAX_SIZE = (1 << INDEX_BITS) - 2; // slot 0 is never used, so no handle is 0
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1, GENERATION_MASK = (1 << GENERATION_BITS) - 1;
+    private static final int NULL = -1;
+
+    private Object[] values = new Object[16];
+    private int[] valueSlots = new int[16];
+    private int[] slotValues = new int[16], generations = new int[16], nextFree = new int[16];
+    private int slots = 1, freeHead = NULL, freeTail = NULL;
+    @Getter private int size = 0;
+    private final List<T> view = new View();
+
+    /** Adds {@code value} and returns its handle. */
+    public int add(T value) {
+        if (size == MAX_SIZE) throw new IllegalStateException("Slot map is full at %d values.".formatted(MAX_SIZE));
+
+        int slot;
+        if (freeHead != NULL) {
+            slot = freeHead;
+            freeHead = nextFree[slot];
+            if (freeHead == NULL) freeTail = NULL;
+        } else {
+            if (slots == slotValues.length) {
+                int capacity = Math.min(slots * 2, INDEX_MASK + 1);
+                slotValues = Arrays.copyOf(slotValues, capacity);
+                generations = Arrays.copyOf(generations, capacity);
+                nextFree = Arrays.copyOf(nextFree, capacity);
+            }
+            slot = slots++;
+        }
+
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+            valueSlots = Arrays.copyOf(valueSlots, size * 2);
+        }
+        values[size] = value;
+        valueSlots[size] = slot;
+        slotValues[slot] = size++;
+        return generations[slot] << INDEX_BITS | slot;
+    }
+
+    /** Removes the value of {@code handle}, returning it, or {@code null} when the handle is stale or invalid. */
+    public T remove(int handle) {
+        int slot = slotOf(handle);
+        if (slot == NULL) return null;
+
+        int index = slotValues[slot], last = --size;
+        T value = (T) values[index];
+        values[index] = values[last];
+        valueSlots[index] = valueSlots[last];
+        slotValues[valueSlots[index]] = index;
+        values[last] = null;
+
+        generations[slot] = generations[slot] + 1 & GENERATION_MASK;
+        slotValues[slot] = NULL;
+        nextFree[slot] = NULL;
+        if (freeTail == NULL) freeHead = slot;
+        else nextFree[freeTail] = slot;
+        freeTail = slot;
+        return value;
+    }
+
+    /** The value of {@code handle}, or {@code null} when the handle is stale or invalid. */
+    public T get(int handle) {
+        int slot = slotOf(handle);
+        return slot == NULL ? null : (T) values[slotValues[slot]];
+    }
+
+    public boolean contains(int handle) { return slotOf(handle) != NULL; }
+
+    /** The slot of {@code handle}, unique among the values stored at the same time and below {@code 2^INDEX_BITS}. */
+    public static int indexOf(int handle) { return handle & INDEX_MASK; }
+
+    private int slotOf(int handle) {
+        int slot = handle & INDEX_MASK;
+        if (handle <= 0 || slot >= slots || slotValues[slot] == NULL || generations[slot] != handle >>> INDEX_BITS) return NULL;
+        return slot;
+    }
+
+    /** Removes every value, leaving their handles stale. */
+    public void clear() {
+        while (size > 0) {
+            int slot = valueSlots[size - 1];
+            remove(generations[slot] << INDEX_BITS | slot);
+        }
+    }
+
+    /** Read-only live view of the values in storage order, which changes as values are removed. */
+    public List<T> view() { return view; }
+
+    private final class View extends AbstractList<T> implements RandomAccess {
+        @Override
+        public T get(int index) {
+            if (index >= size) throw new IndexOutOfBoundsException(index);
+            return (T) values[index];
+        }
+
+        @Override public int size() { return size; }
+    }
+}
@@ -1,7 +1,6 @@
 package engine.utils;
 
 import com.glitched.annotations.Uniform;
-import engine.managers.Scene;
 import org.joml.Vector3f;
 
 import java.util.ArrayList;
@@ -12,9 +11,12 @@ public class Sphere extends Entity {
     public float diameter = 0.5f;
     protected float speedConservation = 1;
     protected final Vector c = new Vector(1, 1, 1);
-    protected List<Sphere>
+    protected final List<Sphere>
             collisions = new ArrayList<>(),
-            prevCollisions = new ArrayList<>();
+            beganCollisions = new ArrayList<>(),
+            endedCollisions = new ArrayList<>();
+    boolean inBroadphase = false;
+    private final float[] colorValues = new float[3], colorState = new float[3];
 
     public Sphere(Number x, Number y, Number z) { this(x, y, z, 0, 0, 0); }
     public Sphere(Number x, Number y, Number z, Number xVelocity, Number yVelocity, Number zVelocity) {
@@ -24,10 +26,19 @@ public class Sphere extends Entity {
     }
 
     @Override public Vector3f getRotation() { return new Vector3f(); }
+    @Override public Vector3f getRotation(Vector3f dest) { return dest.zero(); }
     @Override public Vector3f getScale() { return new Vector3f(diameter); }
+    @Override public Vector3f getScale(Vector3f dest) { return dest.set(diameter); }
 
     @Uniform("sphereColor")
-    private float[] color() { return c.toFloatArray(); }
+    private float[] color() { return c.toFloatArray(colorValues); }
+
+    @Override
+    protected boolean refreshState() {
+        boolean changed = false;
+        for (int i=0; i<colorState.length; i++) if (colorState[i] != c.getFloat(i)) { colorState[i] = c.getFloat(i); changed = true; }
+        return changed;
+    }
 
     @Override
     public void staticUpdate(double dt) {
@@ -35,31 +46,19 @@ public class Sphere extends Entity {
         updateRigidBodyPhysics();
     }
 
+    /** Bounces off every sphere that started touching this one this tick, as reported by the {@link Broadphase}. */
     protected void updateRigidBodyPhysics() {
-        prevCollisions.clear();
-        prevCollisions.addAll(collisions);
-        if ((collisions = sphereCollisions()).isEmpty()) return;
+        if (beganCollisions.isEmpty()) return;
 
-        Vector3f newSpeed = collisions.stream()
-                .filter(s -> !prevCollisions.contains(s))
-                .map(s -> getPosition().sub(s.position))
-                .reduce(new Vector3f(), Vector3f::add)
-                .normalize(speed.length() * speedConservation);
+        Vector3f newSpeed = new Vector3f();
+        for (Sphere s: beganCollisions) newSpeed.add(position).sub(s.position);
+        newSpeed.normalize(speed.length() * speedConservation);
         if (newSpeed.isFinite()) speed.set(newSpeed);
     }
 
-    private List<Sphere> sphereCollisions() {
-        return Scene.get().getObjects().stream()
-                .filter(e ->
-                        Sphere.class.isAssignableFrom(e.getClass())
-                        && ((Sphere)e).getDistance(this) < (((Sphere)e).diameter + diameter) / 2
-                        && !e.equals(this))
-                .map(e -> (Sphere) e)
-                .toList();
-    }
-
-    private double getDistance(Sphere sphere) {
-        Vector3f v = getPosition().sub(sphere.position).absolute();
-        return Math.sqrt(v.dot(v));
+    void clearContacts() {
+        collisions.clear();
+        beganCollisions.clear();
+        endedCollisions.clear();
     }
 }
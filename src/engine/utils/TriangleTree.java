@@ -0,0 +1,220 @@
+package engine.utils;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Static bounding volume hierarchy over the triangles of a mesh, used to ray-cast models on the CPU.
+ * <p>Built once from a vertex buffer and a triangle list, splitting at the median of the longest centroid axis until
+ * leaves hold at most {@link #LEAF_SIZE} triangles. Nodes and triangles live in flat arrays and casts walk the tree
+ * with a per-thread stack, nearest child first, so concurrent casts never allocate.</p>
+ */
+@SuppressWarnings("unused")
+public final class TriangleTree {
+    private static final int LEAF_SIZE = 4;
+
+    /** The nearest triangle a cast hit, with the distance along the ray in units of its direction. */
+    public static final class Hit {
+        public int triangle = -1;
+        public float distance = Float.POSITIVE_INFINITY;
+
+        public boolean isHit() { return triangle >= 0; }
+        public Hit reset() { triangle = -1; distance = Float.POSITIVE_INFINITY; return this; }
+    }
+
+    private static final ThreadLocal<int[][]> stacks = ThreadLocal.withInitial(() -> new int[][] {new int[64]});
+
+    private final float[] vertices; // x, y, z of every corner of every triangle
+    private final int[] order;      // triangles sorted by leaf
+    private float[] bounds = new float[0];
+    private int[] first = new int[0], count = new int[0]; // count 0 marks an inner node whose children are first and first+1
+    private int nodes = 0;
+    @Getter private final int triangleCount;
+
+    /**
+     * @param positions Vertex data holding the position of each vertex in three consecutive values.
+     * @param stride Values per vertex in {@code positions}.
+     * @param offset Index of the position within each vertex.
+     * @param triangles Three vertex indices per triangle.
+     */
+    public TriangleTree(float[] positions, int stride, int offset, int[] triangles) {
+        triangleCount = triangles.length / 3;
+        vertices = new float[triangleCount * 9];
+        for (int i=0; i<triangleCount * 3; i++) {
+            int v = triangles[i] * stride + offset;
+            vertices[i*3]   = positions[v];
+            vertices[i*3+1] = positions[v+1];
+            vertices[i*3+2] = positions[v+2];
+        }
+
+        order = new int[triangleCount];
+        for (int i=0; i<triangleCount; i++) order[i] = i;
+        float[] centroids = new float[triangleCount * 3];
+        for (int i=0; i<triangleCount * 3; i++) {
+            int t = i / 3, axis = i % 3;
+            centroids[i] = (vertices[t*9+axis] + vertices[t*9+3+axis] + vertices[t*9+6+axis]) / 3;
+        }
+
+        if (triangleCount > 0) build(allocateNode(), 0, triangleCount, centroids);
+    }
+
+    private int allocateNode() {
+        if (nodes == first.length) {
+            int capacity = Math.max(16, nodes * 2);
+            bounds = Arrays.copyOf(bounds, capacity * 6);
+            first = Arrays.copyOf(first, capacity);
+            count = Arrays.copyOf(count, capacity);
+        }
+        return nodes++;
+    }
+
+    private void build(int node, int from, int to, float[] centroids) {
+        int o = node * 6;
+        Arrays.fill(bounds, o, o + 3, Float.POSITIVE_INFINITY);
+        Arrays.fill(bounds, o + 3, o + 6, Float.NEGATIVE_INFINITY);
+        float[] centroidBounds = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+                Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+        for (int i=from; i<to; i++) {
+            int t = order[i];
+            for (int axis=0; axis<3; axis++) {
+                for (int corner=0; corner<3; corner++) {
+                    float value = vertices[t*9 + corner*3 + axis];
+                    bounds[o+axis] = Math.min(bounds[o+axis], value);
+                    bounds[o+axis+3] = Math.max(bounds[o+axis+3], value);
+                }
+                centroidBounds[axis] = Math.min(centroidBounds[axis], centroids[t*3+axis]);
+                centroidBounds[axis+3] = Math.max(centroidBounds[axis+3], centroids[t*3+axis]);
+            }
+        }
+
+        int axis = 0;
+        for (int i=1; i<3; i++)
+            if (centroidBounds[i+3] - centroidBounds[i] > centroidBounds[axis+3] - centroidBounds[axis]) axis = i;
+
+        if (to - from <= LEAF_SIZE || centroidBounds[axis+3] == centroidBounds[axis]) {
+            first[node] = from;
+            count[node] = to - from;
+            return;
+        }
+
+        int middle = (from + to) >>> 1;
+        select(from, to - 1, middle, axis, centroids);
+        int left = allocateNode(), right = allocateNode();
+        first[node] = left;
+        count[node] = 0;
+        build(left, from, middle, centroids);
+        build(right, middle, to, centroids);
+    }
+
+    /** Partially sorts {@code order} between {@code low} and {@code high} so that {@code k} holds its median. */
+    private void select(int low, int high, int k, int axis, float[] centroids) {
+        while (low < high) {
+            float pivot = centroids[order[(low + high) >>> 1] * 3 + axis];
+            int i = low, j = high;
+            while (i <= j) {
+                while (centroids[order[i] * 3 + axis] < pivot) i++;
+                while (centroids[order[j] * 3 + axis] > pivot) j--;
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i++] = order[j];
+                    order[j--] = swap;
+                }
+            }
+            if (k <= j) high = j;
+            else if (k >= i) low = i;
+            else return;
+        }
+    }
+
+    // --- Queries -----------------------------------------------------------------------------------------------------
+
+    /**
+     * Finds the nearest triangle hit by the ray before {@code hit.distance} (or {@code maxDistance}, whichever is
+     * closer) and writes it into {@code hit}. Both sides of every triangle are hit.
+     * @return Whether a nearer triangle was found.
+     */
+    public boolean raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance, Hit hit) {
+        if (nodes == 0) return false;
+        float limit = Math.min(maxDistance, hit.distance);
+        float ix = 1f / dx, iy = 1f / dy, iz = 1f / dz;
+        boolean found = false;
+
+        int[][] holder = stacks.get();
+        int[] stack = holder[0];
+        int size = 0;
+        stack[size++] = 0;
+        while (size > 0) {
+            int node = stack[--size];
+            if (intersect(node, ox, oy, oz, ix, iy, iz, limit) < 0) continue;
+
+            if (count[node] > 0) {
+                for (int i=first[node]; i<first[node] + count[node]; i++) {
+                    float distance = intersectTriangle(order[i], ox, oy, oz, dx, dy, dz);
+                    if (distance >= 0 && distance < limit) {
+                        limit = distance;
+                        hit.distance = distance;
+                        hit.triangle = order[i];
+                        found = true;
+                    }
+                }
+                continue;
+            }
+
+            int a = first[node], b = a + 1;
+            float da = intersect(a, ox, oy, oz, ix, iy, iz, limit), db = intersect(b, ox, oy, oz, ix, iy, iz, limit);
+            if (size + 2 > stack.length) holder[0] = stack = Arrays.copyOf(stack, stack.length * 2);
+            if (da >= 0 && db >= 0) { // visit the nearer child first so it clips the farther one
+                stack[size++] = da < db ? b : a;
+                stack[size++] = da < db ? a : b;
+            } else if (da >= 0) stack[size++] = a;
+            else if (db >= 0) stack[size++] = b;
+        }
+        return found;
+    }
+
+    private float intersect(int node, float ox, float oy, float oz, float ix, float iy, float iz, float maxDistance) {
+        int o = node * 6;
+        float t1 = (bounds[o]   - ox) * ix, t2 = (bounds[o+3] - ox) * ix;
+        float tMin = Math.min(t1, t2), tMax = Math.max(t1, t2);
+        t1 = (bounds[o+1] - oy) * iy; t2 = (bounds[o+4] - oy) * iy;
+        tMin = Math.max(tMin, Math.min(t1, t2)); tMax = Math.min(tMax, Math.max(t1, t2));
+        t1 = (bounds[o+2] - oz) * iz; t2 = (bounds[o+5] - oz) * iz;
+        tMin = Math.max(tMin, Math.min(t1, t2)); tMax = Math.min(tMax, Math.max(t1, t2));
+
+        if (!(tMax >= Math.max(tMin, 0)) || tMin > maxDistance) return -1;
+        return Math.max(tMin, 0);
+    }
+
+    /** Möller–Trumbore intersection, returning the distance along the ray or -1 on a miss. */
+    private float intersectTriangle(int triangle, float ox, float oy, float oz, float dx, float dy, float dz) {
+        int o = triangle * 9;
+        float ax = vertices[o],   ay = vertices[o+1], az = vertices[o+2];
+        float e1x = vertices[o+3] - ax, e1y = vertices[o+4] - ay, e1z = vertices[o+5] - az;
+        float e2x = vertices[o+6] - ax, e2y = vertices[o+7] - ay, e2z = vertices[o+8] - az;
+
+        float px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+        float determinant = e1x * px + e1y * py + e1z * pz;
+        if (Math.abs(determinant) < 1e-12f) return -1;
+        float inverse = 1f / determinant;
+
+        float sx = ox - ax, sy = oy - ay, sz = oz - az;
+        float u = (sx * px + sy * py + sz * pz) * inverse;
+        if (u < 0 || u > 1) return -1;
+
+        float qx = sy * e1z - sz * e1y, qy = sz * e1x - sx * e1z, qz = sx * e1y - sy * e1x;
+        float v = (dx * qx + dy * qy + dz * qz) * inverse;
+        if (v < 0 || u + v > 1) return -1;
+
+        float distance = (e2x * qx + e2y * qy + e2z * qz) * inverse;
+        return distance >= 0 ? distance : -1;
+    }
+
+    /** Copies the three corners of {@code triangle} into {@code dest}, nine values from {@code offset}. */
+    public float[] getTriangle(int triangle, float[] dest, int offset) {
+        System.arraycopy(vertices, triangle * 9, dest, offset, 9);
+        return dest;
+    }
+
+    public int getNodeCount() { return nodes; }
+}
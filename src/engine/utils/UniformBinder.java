@@ -0,0 +1,84 @@
+package engine.utils;
+
+import com.glitched.annotations.Uniform;
+
+import java.lang.invoke.*;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Direct accessors for the {@code @Uniform} methods of a class.
+ * <p>Each method is looked up once per class and bound through {@link LambdaMetafactory}, so reading a uniform value is
+ * a plain interface call the JIT can inline instead of a reflective {@code Method.invoke}. Methods of subclasses take
+ * precedence over inherited ones with the same uniform name.</p>
+ */
+@SuppressWarnings("unused")
+public final class UniformBinder {
+    @FunctionalInterface public interface Source { float[] get(Object instance); }
+
+    private static final Map<Class<?>, UniformBinder> binders = new ConcurrentHashMap<>();
+
+    public static UniformBinder of(Class<?> type) {
+        return binders.computeIfAbsent(type, UniformBinder::new);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private final Map<String, Source> sources = new HashMap<>();
+
+    private UniformBinder(Class<?> type) {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass())
+            for (Method method: c.getDeclaredMethods()) {
+                if (!method.isAnnotationPresent(Uniform.class)
+                        || Modifier.isStatic(method.getModifiers())
+                        || method.getParameterCount() != 0
+                        || method.getReturnType() != float[].class) continue;
+
+                String[] names = method.getAnnotation(Uniform.class).value();
+                if (names.length == 0) names = new String[]{method.getName()};
+
+                Source source = null;
+                for (String name: names) if (!sources.containsKey(name))
+                    sources.put(name, source == null ? (source = bind(c, method)) : source);
+            }
+    }
+
+    public Source get(String name) { return sources.get(name); }
+    public Source get(String... names) {
+        for (String name: names) if (sources.containsKey(name)) return sources.get(name);
+        return null;
+    }
+    public boolean provides(String name) { return sources.containsKey(name); }
+
+    @Override
+    public String toString() { return Arrays.toString(sources.keySet().toArray()); }
+
+    private static Source bind(Class<?> owner, Method method) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(owner, MethodHandles.lookup());
+            MethodHandle handle = lookup.unreflect(method);
+            try {
+                return (Source) LambdaMetafactory.metafactory(
+                        lookup,
+                        "get",
+                        MethodType.methodType(Source.class),
+                        MethodType.methodType(float[].class, Object.class),
+                        handle,
+                        MethodType.methodType(float[].class, owner)
+                ).getTarget().invokeExact();
+            } catch (Throwable ignored) {
+                MethodHandle generic = handle.asType(MethodType.methodType(float[].class, Object.class));
+                return instance -> {
+                    try { return (float[]) generic.invokeExact(instance); }
+                    catch (Throwable e) { throw new RuntimeException("Uniform method \"%s.%s\" failed.".formatted(owner.getName(), method.getName()), e); }
+                };
+            }
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Unable to bind uniform method \"%s.%s\".".formatted(owner.getName(), method.getName()), e);
+        }
+    }
+}
@@ -1,8 +1,9 @@
 package engine.utils;
 
 import lombok.AllArgsConstructor;
+import org.lwjgl.BufferUtils;
 
-import java.util.Arrays;
+import java.nio.FloatBuffer;
 
 import static org.lwjgl.opengl.GL20.*;
 
@@ -20,6 +21,9 @@ public enum UniformFunctions {
     UNIFORM_3M,
     UNIFORM_4M;
 
+    /** Upload staging shared by every uniform. Uniforms are only set from the render thread. */
+    private static final FloatBuffer buffer = BufferUtils.createFloatBuffer(16);
+
     public static UniformFunctions fromState(int state) {
         return switch (state) {
             case  0 -> UNIFORM_1I;
@@ -58,6 +62,19 @@ public enum UniformFunctions {
         };
     }
 
+    /** Number of floats the uniform reads from its value array. */
+    public int size() {
+        return switch (ordinal()) {
+            case 0, 4 -> 1;
+            case 1, 5 -> 2;
+            case 2, 6 -> 3;
+            case 3, 7, 8 -> 4;
+            case 9 -> 9;
+            case 10 -> 16;
+            default -> 0;
+        };
+    }
+
     public void setUniform(int location, float[] values) {
         if (values == null || values.length == 0) return;
         try {
@@ -66,14 +83,22 @@ public enum UniformFunctions {
                 case  1 -> glUniform2i(location, (int) values[0], (int) values[1]);
                 case  2 -> glUniform3i(location, (int) values[0], (int) values[1], (int) values[2]);
                 case  3 -> glUniform4i(location, (int) values[0], (int) values[1], (int) values[2], (int) values[3]);
-                case  4 -> glUniform1fv(location, Arrays.copyOf(values, 1));
-                case  5 -> glUniform2fv(location, Arrays.copyOf(values, 2));
-                case  6 -> glUniform3fv(location, Arrays.copyOf(values, 3));
-                case  7 -> glUniform4fv(location, Arrays.copyOf(values, 4));
-                case  8 -> glUniformMatrix2fv(location, false, Arrays.copyOf(values, 4));
-                case  9 -> glUniformMatrix3fv(location, false, Arrays.copyOf(values, 9));
-                case 10 -> glUniformMatrix4fv(location, false, Arrays.copyOf(values, 16));
+                case  4 -> glUniform1fv(location, stage(values));
+                case  5 -> glUniform2fv(location, stage(values));
+                case  6 -> glUniform3fv(location, stage(values));
+                case  7 -> glUniform4fv(location, stage(values));
+                case  8 -> glUniformMatrix2fv(location, false, stage(values));
+                case  9 -> glUniformMatrix3fv(location, false, stage(values));
+                case 10 -> glUniformMatrix4fv(location, false, stage(values));
             }
         } catch (IndexOutOfBoundsException ignored) {}
     }
+
+    /** Copies the values into the staging buffer, zero padding short arrays to the uniform's size. */
+    private FloatBuffer stage(float[] values) {
+        int size = size(), count = Math.min(size, values.length);
+        buffer.clear().put(values, 0, count);
+        for (int i=count; i<size; i++) buffer.put(0);
+        return buffer.flip();
+    }
 }
@@ -5,13 +5,11 @@ import org.joml.*;
 import java.lang.Math;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
-import java.util.stream.IntStream;
 
 @SuppressWarnings({"unused", "UnusedReturnValue"})
 public final class Vector {
     private final int size;
-    private final Number[] values;
+    private final double[] values;
     private int type = 4;
 
     public Vector(Vector2d vector) { this(vector.x, vector.y); }
@@ -23,50 +21,72 @@ public final class Vector {
     public Vector(Vector4d vector) { this(vector.x, vector.y, vector.z, vector.w); }
     public Vector(Vector4f vector) { this(vector.x, vector.y, vector.z, vector.w); }
     public Vector(Vector4i vector) { this(vector.x, vector.y, vector.z, vector.w); }
-    public Vector(Vector vector) { this(vector.values); this.type = vector.type; }
+    public Vector(Vector vector) { this.values = Arrays.copyOf(vector.values, size = vector.size); this.type = vector.type; }
+    public Vector(double x, double y) { this(2); values[0] = x; values[1] = y; }
+    public Vector(double x, double y, double z) { this(3); values[0] = x; values[1] = y; values[2] = z; }
+    public Vector(double x, double y, double z, double w) { this(4); values[0] = x; values[1] = y; values[2] = z; values[3] = w; }
+    public Vector(double[] values) { this.values = Arrays.copyOf(values, size = values.length); }
+    public Vector(float[] values) { this(values.length); setAll(values); }
     public Vector(Number... values) {
-        this.values = Arrays.copyOf(values, size = values.length);
+        this(values.length);
+        setAll(values);
     }
 
     public static Vector ofSize(int size) {
         return new Vector(size);
     }
     private Vector(int size) {
-        this.values = new Number[this.size = size];
+        this.values = new double[this.size = size];
     }
 
-    public Vector setAll(byte[] values) {return setAll(IntStream.range(0, values.length).mapToObj(i -> values[i]).toArray(Byte[]::new));}
-    public Vector setAll(short[] values) {return setAll(IntStream.range(0, values.length).mapToObj(i -> values[i]).toArray(Short[]::new));}
-    public Vector setAll(int[] values) {return setAll(Arrays.stream(values).boxed().toArray(Integer[]::new));}
-    public Vector setAll(long[] values) {return setAll(Arrays.stream(values).boxed().toArray(Long[]::new));}
-    public Vector setAll(double[] values) {return setAll(Arrays.stream(values).boxed().toArray(Double[]::new));}
-    public Vector setAll(float[] values) {return setAll(IntStream.range(0, values.length).mapToDouble(i -> values[i]).boxed().toArray(Double[]::new));}
+    public Vector setAll(byte[] values) { for (int i=0; i<size; i++) this.values[i] = i < values.length ? values[i] : 0; return this; }
+    public Vector setAll(short[] values) { for (int i=0; i<size; i++) this.values[i] = i < values.length ? values[i] : 0; return this; }
+    public Vector setAll(int[] values) { for (int i=0; i<size; i++) this.values[i] = i < values.length ? values[i] : 0; return this; }
+    public Vector setAll(long[] values) { for (int i=0; i<size; i++) this.values[i] = i < values.length ? values[i] : 0; return this; }
+    public Vector setAll(double[] values) { for (int i=0; i<size; i++) this.values[i] = i < values.length ? values[i] : 0; return this; }
+    public Vector setAll(float[] values) { for (int i=0; i<size; i++) this.values[i] = i < values.length ? values[i] : 0; return this; }
     public Vector setAll(Number[] values) {
-        IntStream.range(0, size).forEach(i -> {
-            if (i < values.length) this.values[i] = values[i];
-            else this.values[i] = 0;
-        });
+        for (int i=0; i<size; i++) this.values[i] = i < values.length && values[i] != null ? values[i].doubleValue() : 0;
         return this;
     }
 
-    public double toRadians() { Vector v = new Vector(this).normalize(); return Math.atan2(v.yd(), v.xd()); }
+    public double toRadians() { double l = length(); return l == 0 ? Math.atan2(yd(), xd()) : Math.atan2(yd() / l, xd() / l); }
     public double toDegrees() { return Math.toDegrees(toRadians()); }
 
-    private Vector addScalar(Number value) { for (int i=0; i<values.length; i++) values[i] = values[i].doubleValue() + value.doubleValue(); return this; }
-    private Vector subScalar(Number value) { for (int i=0; i<values.length; i++) values[i] = values[i].doubleValue() - value.doubleValue(); return this; }
-    private Vector mulScalar(Number value) { for (int i=0; i<values.length; i++) values[i] = values[i].doubleValue() * value.doubleValue(); return this; }
-    private Vector divScalar(Number value) { for (int i=0; i<values.length; i++) values[i] = values[i].doubleValue() / value.doubleValue(); return this; }
+    public Vector add(double value) { for (int i=0; i<size; i++) values[i] += value; return this; }
+    public Vector sub(double value) { for (int i=0; i<size; i++) values[i] -= value; return this; }
+    public Vector mul(double value) { for (int i=0; i<size; i++) values[i] *= value; return this; }
+    public Vector div(double value) { for (int i=0; i<size; i++) values[i] /= value; return this; }
+
+    // Components missing from the arguments count as 0, as they do when combining with a shorter Vector.
+    public Vector add(double x, double y) { return add(x, y, 0, 0); }
+    public Vector add(double x, double y, double z) { return add(x, y, z, 0); }
+    public Vector add(double x, double y, double z, double w) { for (int i=0; i<size; i++) values[i] += component(i, x, y, z, w); return this; }
+    public Vector sub(double x, double y) { return sub(x, y, 0, 0); }
+    public Vector sub(double x, double y, double z) { return sub(x, y, z, 0); }
+    public Vector sub(double x, double y, double z, double w) { for (int i=0; i<size; i++) values[i] -= component(i, x, y, z, w); return this; }
+    public Vector mul(double x, double y) { return mul(x, y, 0, 0); }
+    public Vector mul(double x, double y, double z) { return mul(x, y, z, 0); }
+    public Vector mul(double x, double y, double z, double w) { for (int i=0; i<size; i++) values[i] *= component(i, x, y, z, w); return this; }
+    public Vector div(double x, double y) { return div(x, y, 0, 0); }
+    public Vector div(double x, double y, double z) { return div(x, y, z, 0); }
+    public Vector div(double x, double y, double z, double w) { for (int i=0; i<size; i++) values[i] /= component(i, x, y, z, w); return this; }
+
+    private static double component(int index, double x, double y, double z, double w) {
+        return switch (index) { case 0 -> x; case 1 -> y; case 2 -> z; case 3 -> w; default -> 0; };
+    }
+
+    public Vector add(Number... values) { if (values.length == 1) add(values[0].doubleValue()); else for (int i=0; i<size; i++) this.values[i] += valueOf(values, i); return this; }
+    public Vector sub(Number... values) { if (values.length == 1) sub(values[0].doubleValue()); else for (int i=0; i<size; i++) this.values[i] -= valueOf(values, i); return this; }
+    public Vector mul(Number... values) { if (values.length == 1) mul(values[0].doubleValue()); else if (values.length > 1) for (int i=0; i<size; i++) this.values[i] *= valueOf(values, i); return this; }
+    public Vector div(Number... values) { if (values.length == 1) div(values[0].doubleValue()); else if (values.length > 1) for (int i=0; i<size; i++) this.values[i] /= valueOf(values, i); return this; }
 
-    public Vector add(Number... values) { if (values.length == 1) addScalar(values[0]); else if (values.length > 1) add(new Vector(values)); return this; }
-    public Vector sub(Number... values) { if (values.length == 1) subScalar(values[0]); else if (values.length > 1) sub(new Vector(values)); return this; }
-    public Vector mul(Number... values) { if (values.length == 1) mulScalar(values[0]); else if (values.length > 1) mul(new Vector(values)); return this; }
-    public Vector div(Number... values) { if (values.length == 1) divScalar(values[0]); else if (values.length > 1) div(new Vector(values)); return this; }
+    private static double valueOf(Number[] values, int index) { return index < values.length && values[index] != null ? values[index].doubleValue() : 0; }
 
     public Vector invert(Number... mask) {
         boolean allMode = mask.length == 0;
-        int elements = allMode ? values.length : Math.min(mask.length, values.length);
-        for (int i=0; i<elements; i++) values[i] = allMode || (int) Logic.clamp(mask[i], 0, 1) == 1 ?
-                -values[i].doubleValue() : values[i].doubleValue();
+        int elements = allMode ? size : Math.min(mask.length, size);
+        for (int i=0; i<elements; i++) if (allMode || (int) Logic.clamp(mask[i], 0, 1) == 1) values[i] = -values[i];
         return this;
     }
 
@@ -74,41 +94,54 @@ public final class Vector {
         return invert(mask).add(mask);
     }
 
-    public Vector add(Vector v) { for (int i=0; i<size; i++) values[i] = values[i].doubleValue() + v.getDouble(i); return this; }
-    public Vector sub(Vector v) { for (int i=0; i<size; i++) values[i] = values[i].doubleValue() - v.getDouble(i); return this; }
-    public Vector mul(Vector v) { for (int i=0; i<size; i++) values[i] = values[i].doubleValue() * v.getDouble(i); return this; }
-    public Vector div(Vector v) { for (int i=0; i<size; i++) try {values[i] = values[i].doubleValue() / v.getDouble(i);} catch (ArithmeticException ignored) {} return this; }
-
-    public Vector normalize(Number length) { return normalize().mul(length); }
-    public Vector normalize() { double l = length(); if (l != 0) for (int i=0; i<size; i++) values[i] = values[i].doubleValue() / l; return this; }
-
-    public Vector swap(Number indexA, Number indexB) { double t = getDouble(indexA.intValue()); set(indexA.intValue(), getDouble(indexB.intValue())); set(indexB.intValue(), t); return this; }
-
-    public Vector2d toVector2d() { return new Vector2d(Arrays.copyOf(toDoubleArray(), 2)); }
-    public Vector3d toVector3d() { return new Vector3d(Arrays.copyOf(toDoubleArray(), 3)); }
-    public Vector4d toVector4d() { return new Vector4d(Arrays.copyOf(toDoubleArray(), 4)); }
-    public Vector2f toVector2f() { return new Vector2f( Arrays.copyOf(toFloatArray(), 2)); }
-    public Vector3f toVector3f() { return new Vector3f( Arrays.copyOf(toFloatArray(), 3)); }
-    public Vector4f toVector4f() { return new Vector4f( Arrays.copyOf(toFloatArray(), 4)); }
-    public Vector2i toVector2i() { return new Vector2i(   Arrays.copyOf(toIntArray(), 2)); }
-    public Vector3i toVector3i() { return new Vector3i(   Arrays.copyOf(toIntArray(), 3)); }
-    public Vector4i toVector4i() { return new Vector4i(   Arrays.copyOf(toIntArray(), 4)); }
+    public Vector add(Vector v) { for (int i=0; i<size; i++) values[i] += v.getDouble(i); return this; }
+    public Vector sub(Vector v) { for (int i=0; i<size; i++) values[i] -= v.getDouble(i); return this; }
+    public Vector mul(Vector v) { for (int i=0; i<size; i++) values[i] *= v.getDouble(i); return this; }
+    public Vector div(Vector v) { for (int i=0; i<size; i++) values[i] /= v.getDouble(i); return this; }
+
+    public Vector normalize(Number length) { return normalize().mul(length.doubleValue()); }
+    public Vector normalize(double length) { return normalize().mul(length); }
+    public Vector normalize() { double l = length(); if (l != 0) for (int i=0; i<size; i++) values[i] /= l; return this; }
+
+    public Vector swap(Number indexA, Number indexB) { return swap(indexA.intValue(), indexB.intValue()); }
+    public Vector swap(int indexA, int indexB) { double t = getDouble(indexA); set(indexA, getDouble(indexB)); set(indexB, t); return this; }
+
+    public Vector2d toVector2d() { return toVector2d(new Vector2d()); }
+    public Vector3d toVector3d() { return toVector3d(new Vector3d()); }
+    public Vector4d toVector4d() { return toVector4d(new Vector4d()); }
+    public Vector2f toVector2f() { return toVector2f(new Vector2f()); }
+    public Vector3f toVector3f() { return toVector3f(new Vector3f()); }
+    public Vector4f toVector4f() { return toVector4f(new Vector4f()); }
+    public Vector2i toVector2i() { return toVector2i(new Vector2i()); }
+    public Vector3i toVector3i() { return toVector3i(new Vector3i()); }
+    public Vector4i toVector4i() { return toVector4i(new Vector4i()); }
+
+    public Vector2d toVector2d(Vector2d dest) { return dest.set(getDouble(0), getDouble(1)); }
+    public Vector3d toVector3d(Vector3d dest) { return dest.set(getDouble(0), getDouble(1), getDouble(2)); }
+    public Vector4d toVector4d(Vector4d dest) { return dest.set(getDouble(0), getDouble(1), getDouble(2), getDouble(3)); }
+    public Vector2f toVector2f(Vector2f dest) { return dest.set(getFloat(0), getFloat(1)); }
+    public Vector3f toVector3f(Vector3f dest) { return dest.set(getFloat(0), getFloat(1), getFloat(2)); }
+    public Vector4f toVector4f(Vector4f dest) { return dest.set(getFloat(0), getFloat(1), getFloat(2), getFloat(3)); }
+    public Vector2i toVector2i(Vector2i dest) { return dest.set(getInt(0), getInt(1)); }
+    public Vector3i toVector3i(Vector3i dest) { return dest.set(getInt(0), getInt(1), getInt(2)); }
+    public Vector4i toVector4i(Vector4i dest) { return dest.set(getInt(0), getInt(1), getInt(2), getInt(3)); }
 
     public static Vector concatenate(Vector... vectors) { return concatenate(Arrays.asList(vectors)); }
     public static Vector concatenate(List<Vector> vectors) {
-        int size = vectors.stream().mapToInt(Vector::size).sum();
+        int size = 0;
+        for (Vector v: vectors) size += v.size;
         Vector result = ofSize(size);
         int offset = 0;
 
         for (Vector v: vectors) {
-            for (int i=0; i<v.size; i++)
-                result.set(offset+i, v.get(i));
+            System.arraycopy(v.values, 0, result.values, offset, v.size);
             offset += v.size;
         }
         return result;
     }
 
-    public static Vector fromRadians(Number radians) { return new Vector(Math.cos(radians.doubleValue()), Math.sin(radians.doubleValue()), 0); }
+    public static Vector fromRadians(Number radians) { return fromRadians(radians.doubleValue()); }
+    public static Vector fromRadians(double radians) { return new Vector(Math.cos(radians), Math.sin(radians), 0); }
     public static Vector fromDegrees(Number degrees) { return fromRadians(Math.toRadians(degrees.doubleValue())); }
 
     /**
@@ -128,8 +161,11 @@ public final class Vector {
 
     /** @noinspection UnusedReturnValue*/
     public Vector set(int index, Number value) {
-        try { values[index] = value; }
-        catch (IndexOutOfBoundsException ignored) {}
+        return set(index, value == null ? 0 : value.doubleValue());
+    }
+
+    public Vector set(int index, double value) {
+        if (index >= 0 && index < size) values[index] = value;
         return this;
     }
 
@@ -170,120 +206,99 @@ public final class Vector {
     public double zd() { return getDouble(2); }
     public double wd() { return getDouble(3); }
 
-    public double length() { return Math.sqrt(Arrays.stream(values).mapToDouble(n -> n.doubleValue() * n.doubleValue()).sum()); }
-
-    public byte   dotByte  (Vector vector) { return (byte)  IntStream.range(0, Math.max(size, vector.size)).map(i -> (byte) (getByte(i) * vector.getByte(i)))     .reduce(0, (a, b) -> (byte) (a + b)); }
-    public short  dotShort (Vector vector) { return (short) IntStream.range(0, Math.max(size, vector.size)).map(i -> (short) (getShort(i) * vector.getShort(i)))  .reduce(0, (a, b) -> (short) (a + b)); }
-    public int    dotInt   (Vector vector) { return         IntStream.range(0, Math.max(size, vector.size)).map(i -> (getInt(i) * vector.getInt(i)))              .sum(); }
-    public long   dotLong  (Vector vector) { return         IntStream.range(0, Math.max(size, vector.size)).mapToLong(i -> (getLong(i) * vector.getLong(i)))      .sum(); }
-    public float  dotFloat (Vector vector) { return (float) IntStream.range(0, Math.max(size, vector.size)).mapToDouble(i -> (getFloat(i) * vector.getFloat(i)))  .reduce(0, (a, b) -> (float) (a + b)); }
-    public double dotDouble(Vector vector) { return         IntStream.range(0, Math.max(size, vector.size)).mapToDouble(i -> (getDouble(i) * vector.getDouble(i))).sum(); }
+    public double length() {
+        double sum = 0;
+        for (int i=0; i<size; i++) sum += values[i] * values[i];
+        return Math.sqrt(sum);
+    }
 
-    public byte[] toByteArray() {
-        byte[] result = new byte[size];
-        for (int i=0; i<size; i++)
-            try { result[i] = values[i].byteValue(); }
-        catch (NullPointerException ignored) { result[i] = 0; }
-        return result;
+    public byte dotByte(Vector vector) {
+        byte sum = 0;
+        for (int i=0; i<Math.max(size, vector.size); i++) sum = (byte) (sum + (byte) (getByte(i) * vector.getByte(i)));
+        return sum;
     }
-    public short[] toShortArray() {
-        short[] result = new short[size];
-        for (int i=0; i<size; i++)
-            try { result[i] = values[i].shortValue(); }
-        catch (NullPointerException ignored) { result[i] = 0; }
-        return result;
+    public short dotShort(Vector vector) {
+        short sum = 0;
+        for (int i=0; i<Math.max(size, vector.size); i++) sum = (short) (sum + (short) (getShort(i) * vector.getShort(i)));
+        return sum;
     }
-    public int[] toIntArray() {
-        int[] result = new int[size];
-        for (int i=0; i<size; i++)
-            try { result[i] = values[i].intValue(); }
-        catch (NullPointerException ignored) { result[i] = 0; }
-        return result;
+    public int dotInt(Vector vector) {
+        int sum = 0;
+        for (int i=0; i<Math.max(size, vector.size); i++) sum += getInt(i) * vector.getInt(i);
+        return sum;
     }
-    public long[] toLongArray() {
-        long[] result = new long[size];
-        for (int i=0; i<size; i++)
-            try { result[i] = values[i].longValue(); }
-        catch (NullPointerException ignored) { result[i] = 0; }
-        return result;
+    public long dotLong(Vector vector) {
+        long sum = 0;
+        for (int i=0; i<Math.max(size, vector.size); i++) sum += getLong(i) * vector.getLong(i);
+        return sum;
     }
-    public float[] toFloatArray() {
-        float[] result = new float[size];
-        for (int i=0; i<size; i++)
-            try { result[i] = values[i].floatValue(); }
-        catch (NullPointerException ignored) { result[i] = 0; }
-        return result;
+    public float dotFloat(Vector vector) {
+        float sum = 0;
+        for (int i=0; i<Math.max(size, vector.size); i++) sum += getFloat(i) * vector.getFloat(i);
+        return sum;
     }
-    public double[] toDoubleArray() {
-        double[] result = new double[size];
-        for (int i=0; i<size; i++)
-            try { result[i] = values[i].doubleValue(); }
-        catch (NullPointerException ignored) { result[i] = 0; }
-        return result;
+    public double dotDouble(Vector vector) {
+        double sum = 0;
+        for (int i=0; i<Math.min(size, vector.size); i++) sum += values[i] * vector.values[i];
+        return sum;
     }
 
+    public byte[] toByteArray() { return toByteArray(new byte[size]); }
+    public short[] toShortArray() { return toShortArray(new short[size]); }
+    public int[] toIntArray() { return toIntArray(new int[size]); }
+    public long[] toLongArray() { return toLongArray(new long[size]); }
+    public float[] toFloatArray() { return toFloatArray(new float[size]); }
+    public double[] toDoubleArray() { return toDoubleArray(new double[size]); }
+
+    /* Writers into caller-owned arrays. Only the first min(size, dest.length) entries are written. */
+    public byte[] toByteArray(byte[] dest) { for (int i=0; i<Math.min(size, dest.length); i++) dest[i] = (byte) values[i]; return dest; }
+    public short[] toShortArray(short[] dest) { for (int i=0; i<Math.min(size, dest.length); i++) dest[i] = (short) values[i]; return dest; }
+    public int[] toIntArray(int[] dest) { for (int i=0; i<Math.min(size, dest.length); i++) dest[i] = (int) values[i]; return dest; }
+    public long[] toLongArray(long[] dest) { for (int i=0; i<Math.min(size, dest.length); i++) dest[i] = (long) values[i]; return dest; }
+    public float[] toFloatArray(float[] dest) { for (int i=0; i<Math.min(size, dest.length); i++) dest[i] = (float) values[i]; return dest; }
+    public double[] toDoubleArray(double[] dest) { System.arraycopy(values, 0, dest, 0, Math.min(size, dest.length)); return dest; }
+
     public int size() {return size;}
 
-    public Number get(int index) {
-        try { return values[index]; }
-        catch (IndexOutOfBoundsException | NullPointerException ignored) { return 0; }
-    }
+    public Number get(int index) { return getDouble(index); }
     public Number getFirst() { return get(0); }
     public Number getLast() { return get(size - 1); }
 
-    public byte getByte(int index) {
-        try {return values[index].byteValue();}
-        catch (IndexOutOfBoundsException | NullPointerException ignored) {return 0;}
-    }
+    public byte getByte(int index) { return (byte) getDouble(index); }
     public byte getFirstByte() { return getByte(0); }
     public byte getLastByte() { return getByte(size-1); }
 
-    public short getShort(int index) {
-        try {return values[index].shortValue();}
-        catch (IndexOutOfBoundsException | NullPointerException ignored) {return 0;}
-    }
+    public short getShort(int index) { return (short) getDouble(index); }
     public short getFirstShort() { return getShort(0); }
     public short getLastShort() { return getShort(size-1); }
 
-    public int getInt(int index) {
-        try {return values[index].intValue();}
-        catch (IndexOutOfBoundsException | NullPointerException ignored) {return 0;}
-    }
+    public int getInt(int index) { return (int) getDouble(index); }
     public int getFirstInt() { return getInt(0); }
     public int getLastInt() { return getInt(size-1); }
 
-    public long getLong(int index) {
-        try {return values[index].longValue();}
-        catch (IndexOutOfBoundsException | NullPointerException ignored) {return 0;}
-    }
+    public long getLong(int index) { return (long) getDouble(index); }
     public long getFirstLong() { return getLong(0); }
     public long getLastLong() { return getLong(size-1); }
 
-    public float getFloat(int index) {
-        try {return values[index].floatValue();}
-        catch (IndexOutOfBoundsException | NullPointerException ignored) {return 0;}
-    }
+    public float getFloat(int index) { return (float) getDouble(index); }
     public float getFirstFloat() { return getFloat(0); }
     public float getLastFloat() { return getFloat(size-1); }
 
-    public double getDouble(int index) {
-        try {return values[index].doubleValue();}
-        catch (IndexOutOfBoundsException | NullPointerException ignored) {return 0;}
-    }
+    public double getDouble(int index) { return index >= 0 && index < size ? values[index] : 0; }
     public double getFirstDouble() { return getDouble(0); }
     public double getLastDouble() { return getDouble(size-1); }
 
     public String toString() {
-        return Arrays.toString(Arrays.stream(values)
-                .map(n -> n == null ? 0 : n)
-                .map(n -> switch (type) {
-                    case 0 -> Byte.toString(n.byteValue());
-                    case 1 -> Short.toString(n.shortValue());
-                    case 2 -> Integer.toString(n.intValue());
-                    case 3 -> Long.toString(n.longValue());
-                    case 5 -> Double.toString(n.doubleValue());
-                    default -> Float.toString(n.floatValue());
-                }).toArray());
+        String[] result = new String[size];
+        for (int i=0; i<size; i++) result[i] = switch (type) {
+            case 0 -> Byte.toString((byte) values[i]);
+            case 1 -> Short.toString((short) values[i]);
+            case 2 -> Integer.toString((int) values[i]);
+            case 3 -> Long.toString((long) values[i]);
+            case 5 -> Double.toString(values[i]);
+            default -> Float.toString((float) values[i]);
+        };
+        return Arrays.toString(result);
     }
 
     @Override
@@ -292,7 +307,7 @@ public final class Vector {
 
         Vector vector = (Vector) object;
         for (int i=0; i<Math.max(size, vector.size); i++)
-            if (!Objects.equals(get(i), vector.get(i))) return false;
+            if (Double.compare(getDouble(i), vector.getDouble(i)) != 0) return false;
         return true;
     }
 
@@ -8,6 +8,7 @@ import engine.utils.Vector;
 @SuppressWarnings("unused")
 public class Box extends Entity {
     private final Vector c = new Vector(1, 1, 1);
+    private final float[] colorValues = new float[3];
     public Box(Number x, Number y, Number z) {
         super("box", "interact_shader");
         // super("box", "texture_shader", "arrow");
@@ -28,9 +29,7 @@ public class Box extends Entity {
 
     @Uniform("fCol")
     @SuppressWarnings("unused")
-    private float[] color() {
-        return c.toFloatArray();
-    }
+    private float[] color() { return c.toFloatArray(colorValues); }
 
     @SuppressWarnings("unused")
     private void setColor(Vector v) { c.set(v); }
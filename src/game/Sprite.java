@@ -8,7 +8,7 @@ import static org.lwjgl.glfw.GLFW.*;
 @SuppressWarnings("unused")
 public class Sprite extends Entity {
     public Sprite(Number x, Number y, Number z) {
-        super("quad", "texture_shader", "Player");
+        super("quad", "texture_shader", "Player", true);
         position.set(x.floatValue(), y.floatValue(), z.floatValue());
         // scale.set(0.28947368421052631578947368421053, 0.5, 0.5);
         scale.set(0.5, 0.5, 0.5);
@@ -2,16 +2,16 @@ package game;
 
 import com.glitched.annotations.Uniform;
 import engine.utils.Entity;
-import engine.utils.Vector;
-import org.joml.Vector3f;
 
 @SuppressWarnings("unused")
 public class Square extends Entity {
+    private final float[] input = {0.5f, 0.5f, 0.5f};
+
     public Square(Number x, Number y, Number z) {
         super("quad", "interact_shader");
         position.set(x.floatValue(), y.floatValue(), z.floatValue());
     }
 
     @Uniform("Input")
-    private float[] input() { return new Vector(new Vector3f(0.5f)).toFloatArray(); }
+    private float[] input() { return input; }
 }